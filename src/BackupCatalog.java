@@ -0,0 +1,187 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+class BackupCatalog {
+    private static final int MIN_CHUNK = 2 * 1024;
+    private static final int MAX_CHUNK = 64 * 1024;
+    // Top 13 bits of the rolling hash all zero: one boundary every 8 KiB on average.
+    private static final int BOUNDARY_SHIFT = 64 - 13;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x42424D4BL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    record Backup(String timestamp, long size, List<String> chunks) {
+    }
+
+    private final File dir;
+    private final File chunksDir;
+
+    BackupCatalog(File dir) {
+        this.dir = dir;
+        this.chunksDir = new File(dir, "chunks");
+    }
+
+    BackupWriter create(String name, String timestamp) throws IOException {
+        chunksDir.mkdirs();
+        return new BackupWriter(name, timestamp);
+    }
+
+    List<Backup> list(String name) throws IOException {
+        List<Backup> backups = new ArrayList<>();
+        Path catalog = catalogFile(name).toPath();
+        if (!Files.exists(catalog)) return backups;
+
+        String[] lines = Files.readString(catalog, StandardCharsets.UTF_8).split("\n", -1);
+        for (int i = 0; i < lines.length - 1; i++) {
+            String[] fields = TabSeparated.parse(lines[i]);
+            if (fields.length < 3) continue;
+            List<String> chunks = fields[2].isEmpty() ? List.of() : Arrays.asList(fields[2].split(","));
+            backups.add(new Backup(fields[0], Long.parseLong(fields[1]), chunks));
+        }
+
+        Collections.reverse(backups);
+        return backups;
+    }
+
+    InputStream open(Backup backup) {
+        Iterator<String> chunks = backup.chunks().iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return Compression.open(chunkFile(chunks.next()));
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        });
+    }
+
+    void adoptLegacyBackups(File userFile) throws IOException {
+        if (catalogFile(userFile.getName()).exists()) return;
+
+        String prefix = userFile.getName() + "_";
+        int nameLength = prefix.length() + "yyyyMMddHHmmss".length() + ".bak".length();
+        File[] files = userFile.getParentFile().listFiles((parent, fileName) ->
+                fileName.startsWith(prefix) && fileName.endsWith(".bak") && fileName.length() == nameLength);
+        if (files == null || files.length == 0) return;
+
+        Arrays.sort(files);
+        for (File file : files) {
+            String timestamp = file.getName().substring(prefix.length(), file.getName().length() - ".bak".length());
+            try (BackupWriter writer = create(userFile.getName(), timestamp)) {
+                Files.copy(file.toPath(), writer);
+                writer.commit();
+            }
+        }
+    }
+
+    private File catalogFile(String name) {
+        return new File(dir, name + ".catalog");
+    }
+
+    private File chunkFile(String hash) {
+        return new File(new File(chunksDir, hash.substring(0, 2)), hash);
+    }
+
+    class BackupWriter extends OutputStream {
+        private final String name;
+        private final String timestamp;
+        private final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        private final List<String> chunks = new ArrayList<>();
+        private final MessageDigest digest;
+        private long hash;
+        private long size;
+        private int newChunks;
+
+        private BackupWriter(String name, String timestamp) throws IOException {
+            this.name = name;
+            this.timestamp = timestamp;
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IOException(ex);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            chunk.write(b);
+            size++;
+            hash = (hash << 1) + GEAR[b & 0xFF];
+
+            if (chunk.size() >= MAX_CHUNK || (chunk.size() >= MIN_CHUNK && hash >>> BOUNDARY_SHIFT == 0)) {
+                cutChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                write(bytes[i]);
+            }
+        }
+
+        int chunkCount() {
+            return chunks.size();
+        }
+
+        int newChunkCount() {
+            return newChunks;
+        }
+
+        Backup commit() throws IOException {
+            if (chunk.size() > 0) cutChunk();
+
+            Backup backup = new Backup(timestamp, size, List.copyOf(chunks));
+            String line = TabSeparated.format(timestamp, String.valueOf(size), String.join(",", chunks)) + "\n";
+            Files.write(catalogFile(name).toPath(), line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            return backup;
+        }
+
+        private void cutChunk() throws IOException {
+            byte[] bytes = chunk.toByteArray();
+            String key = HexFormat.of().formatHex(digest.digest(bytes));
+            File file = chunkFile(key);
+
+            if (!file.exists()) {
+                file.getParentFile().mkdirs();
+                Compression.write(file, bytes);
+                newChunks++;
+            }
+
+            chunks.add(key);
+            chunk.reset();
+            hash = 0;
+        }
+    }
+}
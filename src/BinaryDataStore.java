@@ -0,0 +1,447 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class BinaryDataStore implements Storage {
+    private static final int USER_MAGIC = 0x42424D55;
+    private static final int CATEGORIES_MAGIC = 0x42424D43;
+    private static final int CATEGORIES_VERSION = 1;
+    private static final int USER_VERSION = 1;
+    // Every section is followed by a CRC32C of its payload.
+    private static final int TRAILER_LENGTH = Integer.BYTES;
+
+    private static final int TRANSACTIONS = 1;
+    private static final int GOALS = 2;
+    private static final int RECURRING = 3;
+    private static final int SAVINGS_GOALS = 4;
+
+    private record Header(User user) {
+    }
+
+    String dataDir = "data";
+    File usersDir = new File(dataDir, "users");
+    File categoriesFile = new File(dataDir, "categories.bin");
+    private final StripedLocks userLocks = new StripedLocks(new File(usersDir, "users.lock"), 64);
+    private final StripedLocks globalLocks = new StripedLocks(new File(dataDir, "data.lock"), 2);
+
+    public BinaryDataStore() {
+        usersDir.mkdirs();
+    }
+
+    @Override
+    public File userFile(String username) {
+        return new File(usersDir, Storage.fileNameFor(username) + ".bin");
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public boolean checkCredentials(String username, String password) {
+        File file = userFile(username);
+        if (!file.exists()) return false;
+
+        try (StripedLocks.Hold hold = userLocks.read(username); DataInputStream in = openInput(file)) {
+            Header header = readHeader(in);
+            return header != null && header.user().getUsername().equals(username) && header.user().getPassword().equals(password);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public User getUser(String username) {
+        File file = userFile(username);
+        if (!file.exists()) return null;
+
+        try (StripedLocks.Hold hold = userLocks.read(username); DataInputStream in = openInput(file)) {
+            Header header = readHeader(in);
+            if (header == null) {
+                System.err.printf("Damaged data file %s: unreadable header%n", file.getName());
+                return null;
+            }
+            if (!header.user().getUsername().equals(username)) return null;
+
+            User user = header.user();
+            user.markClean(EnumSet.allOf(Section.class));
+            user.loadLazily(EnumSet.of(Section.TRANSACTIONS, Section.GOALS, Section.RECURRING, Section.SAVINGS_GOALS), this::loadSection);
+            return user;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    @SuppressWarnings("try")
+    private void loadSection(User user, Section wanted) {
+        File file = userFile(user.getUsername());
+        try (StripedLocks.Hold hold = userLocks.read(user.getUsername()); DataInputStream in = openInput(file)) {
+            Header header = readHeader(in);
+            if (header == null) return;
+
+            int section;
+            while ((section = in.read()) >= 0) {
+                int length = in.readInt();
+                if (sectionFor(section) != wanted) {
+                    in.skipNBytes(length + TRAILER_LENGTH);
+                    continue;
+                }
+
+                byte[] payload = in.readNBytes(length);
+                if (payload.length < length || (int) Checksums.crc32c(payload, 0, length) != in.readInt()) {
+                    System.err.printf("Damaged data file %s: section %s%n", file.getName(), wanted);
+                }
+
+                DataInputStream body = new DataInputStream(new ByteArrayInputStream(payload));
+                switch (section) {
+                case TRANSACTIONS: readTransactions(body, user); break;
+                case GOALS: readGoals(body, user); break;
+                case RECURRING: readRecurring(body, user); break;
+                case SAVINGS_GOALS: readSavingsGoals(body, user); break;
+                default: break;
+                }
+                return;
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void addUser(User user) {
+        try (StripedLocks.Hold hold = userLocks.write(user.getUsername())) {
+            writeUserFile(user);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void updateUser(User user) {
+        try (StripedLocks.Hold hold = userLocks.write(user.getUsername())) {
+            if (!userFile(user.getUsername()).exists()) return;
+
+            long stored = storedVersion(user.getUsername());
+            if (stored != user.version) {
+                throw new VersionConflictException(user.getUsername(), user.version, stored);
+            }
+
+            user.version++;
+            try {
+                writeUserFile(user);
+            } catch (IOException ex) {
+                user.version--;
+                throw ex;
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void exportUser(String username, OutputStream out) throws IOException {
+        try (StripedLocks.Hold hold = userLocks.read(username)) {
+            File file = userFile(username);
+            if (!file.exists()) throw new IOException("No data for user " + username);
+            Files.copy(file.toPath(), out);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void importUser(String username, InputStream in) throws IOException {
+        try (StripedLocks.Hold hold = userLocks.write(username)) {
+            File file = userFile(username);
+            File temp = new File(file.getPath() + ".restore");
+            AtomicFiles.write(temp, out -> in.transferTo(out));
+
+            try (DataInputStream check = openInput(temp)) {
+                Header header = readHeader(check);
+                if (header == null || !header.user().getUsername().equals(username)) {
+                    throw new IOException("Backup does not contain user " + username);
+                }
+            } catch (IOException ex) {
+                temp.delete();
+                throw ex;
+            }
+
+            long current = file.exists() ? storedVersion(username) : -1;
+            AtomicFiles.move(temp, file);
+
+            if (current >= 0) {
+                User restored = getUser(username);
+                restored.getTransactions();
+                restored.getGoals();
+                restored.getRecurringTransactions();
+                restored.getSavingsGoals();
+                restored.markDirty(EnumSet.allOf(Section.class));
+                restored.version = current + 1;
+                writeUserFile(restored);
+            }
+        }
+    }
+
+    private long storedVersion(String username) throws IOException {
+        try (DataInputStream in = openInput(userFile(username))) {
+            Header header = readHeader(in);
+            return header != null ? header.user().version : 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        userLocks.close();
+        globalLocks.close();
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void saveCategories(List<String> incomeCats, List<String> expenseCats) {
+        try (StripedLocks.Hold hold = globalLocks.write("categories")) {
+            Compression.write(categoriesFile, stream -> {
+                DataOutputStream out = new DataOutputStream(stream);
+                out.writeInt(CATEGORIES_MAGIC);
+                out.writeByte(CATEGORIES_VERSION);
+                out.writeInt(incomeCats.size() + expenseCats.size());
+                for (String category : incomeCats) {
+                    out.writeByte(TransactionType.INCOME.ordinal());
+                    out.writeUTF(category);
+                }
+                for (String category : expenseCats) {
+                    out.writeByte(TransactionType.EXPENSE.ordinal());
+                    out.writeUTF(category);
+                }
+                out.flush();
+            });
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public boolean loadCategories(List<String> incomeCats, List<String> expenseCats) {
+        if (!categoriesFile.exists()) return false;
+
+        try (StripedLocks.Hold hold = globalLocks.read("categories"); DataInputStream in = openInput(categoriesFile)) {
+            if (in.readInt() != CATEGORIES_MAGIC || in.readUnsignedByte() != CATEGORIES_VERSION) return false;
+
+            List<String> loadedIncomeCats = new ArrayList<>();
+            List<String> loadedExpenseCats = new ArrayList<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                TransactionType type = TransactionType.values()[in.readUnsignedByte()];
+                String name = in.readUTF();
+                (type == TransactionType.INCOME ? loadedIncomeCats : loadedExpenseCats).add(name);
+            }
+
+            if (!loadedIncomeCats.isEmpty()) {
+                incomeCats.clear();
+                incomeCats.addAll(loadedIncomeCats);
+            }
+
+            if (!loadedExpenseCats.isEmpty()) {
+                expenseCats.clear();
+                expenseCats.addAll(loadedExpenseCats);
+            }
+
+            return !loadedIncomeCats.isEmpty() || !loadedExpenseCats.isEmpty();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    private Header readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != USER_MAGIC) return null;
+        if (in.readUnsignedByte() != USER_VERSION) return null;
+
+        User user = new User(in.readUTF(), in.readUTF());
+        user.setCurrencySymbol(in.readUTF());
+        user.version = in.readLong();
+        return new Header(user);
+    }
+
+    private void readTransactions(DataInputStream in, User user) throws IOException {
+        int count = in.readInt();
+        TransactionTable transactions = user.getTransactions();
+        transactions.ensureCapacity(transactions.size() + count);
+
+        for (int i = 0; i < count; i++) {
+            long id = in.readLong();
+            int date = in.readInt();
+            long amount = in.readLong();
+            TransactionType type = TransactionType.values()[in.readUnsignedByte()];
+            String description = in.readUTF();
+            String category = in.readUTF();
+            transactions.append(id, date, description, amount, type, category);
+        }
+    }
+
+    private void readGoals(DataInputStream in, User user) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String category = in.readUTF();
+            user.getGoals().add(new BudgetGoal(category, in.readLong()));
+        }
+    }
+
+    private void readRecurring(DataInputStream in, User user) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int nextDueDate = in.readInt();
+            long amount = in.readLong();
+            TransactionType type = TransactionType.values()[in.readUnsignedByte()];
+            String description = in.readUTF();
+            String category = in.readUTF();
+            in.readUTF();
+            user.getRecurringTransactions().add(new RecurringTransaction(description, amount, type, category, String.valueOf(nextDueDate)));
+        }
+    }
+
+    private void readSavingsGoals(DataInputStream in, User user) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            long targetAmount = in.readLong();
+            long currentAmount = in.readLong();
+            user.getSavingsGoals().add(new SavingsGoal(name, targetAmount, currentAmount));
+        }
+    }
+
+    private void writeUserFile(User user) throws IOException {
+        File file = userFile(user.getUsername());
+        Set<Section> dirty = user.dirtySections();
+        Map<Integer, byte[]> unchanged = readUnchangedSections(file, dirty);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream section = new DataOutputStream(buffer);
+
+        Compression.write(file, stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(USER_MAGIC);
+            out.writeByte(USER_VERSION);
+            out.writeUTF(user.getUsername());
+            out.writeUTF(user.getPassword());
+            out.writeUTF(user.getCurrencySymbol());
+            out.writeLong(user.version);
+
+            if (!unchanged.containsKey(TRANSACTIONS)) {
+                section.writeInt(user.getTransactions().size());
+                for (Transaction transaction : user.getTransactions()) {
+                    section.writeLong(transaction.getId());
+                    section.writeInt(transaction.getDate());
+                    section.writeLong(transaction.getAmount());
+                    section.writeByte(transaction.getType().ordinal());
+                    section.writeUTF(transaction.getDescription());
+                    section.writeUTF(transaction.getCategory());
+                }
+                writeSection(out, TRANSACTIONS, buffer);
+            }
+
+            if (!unchanged.containsKey(GOALS)) {
+                section.writeInt(user.getGoals().size());
+                for (BudgetGoal goal : user.getGoals()) {
+                    section.writeUTF(goal.getCategory());
+                    section.writeLong(goal.getAmount());
+                }
+                writeSection(out, GOALS, buffer);
+            }
+
+            if (!unchanged.containsKey(RECURRING)) {
+                section.writeInt(user.getRecurringTransactions().size());
+                for (RecurringTransaction recurring : user.getRecurringTransactions()) {
+                    section.writeInt(Integer.parseInt(recurring.getNextDueDate()));
+                    section.writeLong(recurring.getAmount());
+                    section.writeByte(recurring.getType().ordinal());
+                    section.writeUTF(recurring.getDescription());
+                    section.writeUTF(recurring.getCategory());
+                    section.writeUTF(recurring.getFrequency());
+                }
+                writeSection(out, RECURRING, buffer);
+            }
+
+            if (!unchanged.containsKey(SAVINGS_GOALS)) {
+                section.writeInt(user.getSavingsGoals().size());
+                for (SavingsGoal savingsGoal : user.getSavingsGoals()) {
+                    section.writeUTF(savingsGoal.getName());
+                    section.writeLong(savingsGoal.getTargetAmount());
+                    section.writeLong(savingsGoal.getCurrentAmount());
+                }
+                writeSection(out, SAVINGS_GOALS, buffer);
+            }
+
+            for (Map.Entry<Integer, byte[]> entry : unchanged.entrySet()) {
+                writeSection(out, entry.getKey(), entry.getValue(), entry.getValue().length);
+            }
+            out.flush();
+        });
+
+        user.markClean(dirty);
+    }
+
+    private Map<Integer, byte[]> readUnchangedSections(File file, Set<Section> dirty) throws IOException {
+        Map<Integer, byte[]> sections = new LinkedHashMap<>();
+        if (!file.exists()) return sections;
+
+        try (DataInputStream in = openInput(file)) {
+            Header header = readHeader(in);
+            if (header == null) return sections;
+
+            int tag;
+            while ((tag = in.read()) >= 0) {
+                int length = in.readInt();
+                Section section = sectionFor(tag);
+                if (section != null && dirty.contains(section)) {
+                    in.skipNBytes(length);
+                } else {
+                    sections.put(tag, in.readNBytes(length));
+                }
+                in.skipNBytes(TRAILER_LENGTH);
+            }
+        }
+        return sections;
+    }
+
+    private static Section sectionFor(int tag) {
+        switch (tag) {
+        case TRANSACTIONS: return Section.TRANSACTIONS;
+        case GOALS: return Section.GOALS;
+        case RECURRING: return Section.RECURRING;
+        case SAVINGS_GOALS: return Section.SAVINGS_GOALS;
+        default: return null;
+        }
+    }
+
+    private void writeSection(DataOutputStream out, int tag, ByteArrayOutputStream buffer) throws IOException {
+        byte[] payload = buffer.toByteArray();
+        writeSection(out, tag, payload, payload.length);
+        buffer.reset();
+    }
+
+    private void writeSection(DataOutputStream out, int tag, byte[] payload, int length) throws IOException {
+        out.writeByte(tag);
+        out.writeInt(length);
+        out.write(payload, 0, length);
+        out.writeInt((int) Checksums.crc32c(payload, 0, length));
+    }
+
+    private static DataInputStream openInput(File file) throws IOException {
+        return new DataInputStream(Compression.open(file));
+    }
+
+}
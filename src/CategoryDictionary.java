@@ -0,0 +1,191 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+final class CategoryDictionary {
+    static final String DELIMITER = ":";
+
+    private static final CategoryDictionary INCOME = new CategoryDictionary();
+    private static final CategoryDictionary EXPENSE = new CategoryDictionary();
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[16];
+
+    private int[] parents = new int[16];
+    private int[] depths = new int[16];
+    private int[] firstChildren = new int[16];
+    private int[] lastChildren = new int[16];
+    private int[] nextSiblings = new int[16];
+    private int size;
+
+    private CategoryDictionary() {
+    }
+
+    static CategoryDictionary of(TransactionType type) {
+        return type == TransactionType.INCOME ? INCOME : EXPENSE;
+    }
+
+    synchronized int intern(String name) {
+        if (name == null) return -1;
+
+        Integer id = ids.get(name);
+        if (id != null) return id;
+
+        int parent = parentOf(name);
+        if (size == names.length) grow();
+        int created = size++;
+        names[created] = name;
+        firstChildren[created] = -1;
+        lastChildren[created] = -1;
+        nextSiblings[created] = -1;
+        attach(created, parent);
+        ids.put(name, created);
+        return created;
+    }
+
+    synchronized int find(String name) {
+        Integer id = name != null ? ids.get(name) : null;
+        return id != null ? id : -1;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized String name(int id) {
+        return id >= 0 ? names[id] : null;
+    }
+
+    synchronized int parent(int id) {
+        return id >= 0 ? parents[id] : -1;
+    }
+
+    synchronized int firstChild(int id) {
+        return id >= 0 ? firstChildren[id] : -1;
+    }
+
+    synchronized int nextSibling(int id) {
+        return id >= 0 ? nextSiblings[id] : -1;
+    }
+
+    synchronized int root(int id) {
+        while (id >= 0 && parents[id] >= 0) {
+            id = parents[id];
+        }
+        return id;
+    }
+
+    // Names are matched exactly so stored categories keep their case; these ignore case for names the user types.
+    synchronized boolean[] matching(String name) {
+        boolean[] matching = new boolean[size];
+        for (int id = 0; id < size; id++) {
+            matching[id] = names[id].equalsIgnoreCase(name);
+        }
+        return matching;
+    }
+
+    synchronized boolean[] within(String name) {
+        boolean[] within = new boolean[size];
+        for (int id = 0; id < size; id++) {
+            for (int node = id; node >= 0 && !within[id]; node = parents[node]) {
+                within[id] = names[node].equalsIgnoreCase(name);
+            }
+        }
+        return within;
+    }
+
+    synchronized boolean isWithin(int id, int ancestor) {
+        if (id < 0 || ancestor < 0) return false;
+        while (depths[id] > depths[ancestor]) {
+            id = parents[id];
+        }
+        return id == ancestor;
+    }
+
+    synchronized String nameBelow(int id, int ancestor) {
+        return id == ancestor ? names[id] : names[id].substring(names[ancestor].length() + DELIMITER.length());
+    }
+
+    synchronized boolean rename(String oldName, String newName) {
+        int id = find(oldName);
+        if (id < 0) return true;
+
+        int[] subtree = subtree(id);
+        for (int node : subtree) {
+            Integer existing = ids.get(renamed(node, id, newName));
+            if (existing != null && existing != node) return false;
+        }
+
+        String[] newNames = new String[subtree.length];
+        for (int i = 0; i < subtree.length; i++) {
+            newNames[i] = renamed(subtree[i], id, newName);
+        }
+        for (int i = 0; i < subtree.length; i++) {
+            ids.remove(names[subtree[i]]);
+            names[subtree[i]] = newNames[i];
+            ids.put(newNames[i], subtree[i]);
+        }
+
+        detach(id);
+        attach(id, parentOf(newName));
+        for (int node : subtree) {
+            if (node != id) depths[node] = depths[parents[node]] + 1;
+        }
+        return true;
+    }
+
+    private int parentOf(String name) {
+        int separator = name.lastIndexOf(DELIMITER);
+        return separator > 0 ? intern(name.substring(0, separator)) : -1;
+    }
+
+    private String renamed(int node, int id, String newName) {
+        return node == id ? newName : newName + DELIMITER + nameBelow(node, id);
+    }
+
+    private int[] subtree(int id) {
+        int[] nodes = new int[size];
+        int count = 0;
+        nodes[count++] = id;
+        for (int i = 0; i < count; i++) {
+            for (int child = firstChildren[nodes[i]]; child >= 0; child = nextSiblings[child]) {
+                nodes[count++] = child;
+            }
+        }
+        return Arrays.copyOf(nodes, count);
+    }
+
+    private void attach(int id, int parent) {
+        parents[id] = parent;
+        depths[id] = parent >= 0 ? depths[parent] + 1 : 0;
+        nextSiblings[id] = -1;
+        if (parent < 0) return;
+
+        if (lastChildren[parent] >= 0) nextSiblings[lastChildren[parent]] = id;
+        else firstChildren[parent] = id;
+        lastChildren[parent] = id;
+    }
+
+    private void detach(int id) {
+        int parent = parents[id];
+        if (parent < 0) return;
+
+        int previous = -1;
+        for (int child = firstChildren[parent]; child != id; child = nextSiblings[child]) {
+            previous = child;
+        }
+        if (previous >= 0) nextSiblings[previous] = nextSiblings[id];
+        else firstChildren[parent] = nextSiblings[id];
+        if (lastChildren[parent] == id) lastChildren[parent] = previous;
+    }
+
+    private void grow() {
+        int capacity = size * 2;
+        names = Arrays.copyOf(names, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        lastChildren = Arrays.copyOf(lastChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+    }
+}
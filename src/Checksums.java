@@ -0,0 +1,78 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32C;
+
+final class Checksums {
+    enum Status {
+        OK, UNCHECKED, DAMAGED
+    }
+
+    private static final String TRAILER = "<?crc32c ";
+    private static final int TAIL_LENGTH = 64;
+
+    private Checksums() {
+    }
+
+    static long crc32c(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return crc.getValue();
+    }
+
+    // The trailer is an XML processing instruction after the root element, covering every byte before it.
+    static void writeTrailer(OutputStream out, long crc) throws IOException {
+        out.write(String.format("%s%08x?>%n", TRAILER, crc).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static Status verifyTrailer(File file) throws IOException {
+        if (Compression.isCompressed(file)) return verifyCompressed(file);
+
+        long size = file.length();
+        byte[] tail = new byte[(int) Math.min(size, TAIL_LENGTH)];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(size - tail.length);
+            in.readFully(tail);
+        }
+
+        String text = new String(tail, StandardCharsets.US_ASCII);
+        int start = text.lastIndexOf(TRAILER);
+        int end = start < 0 ? -1 : text.indexOf("?>", start);
+        if (end < 0) return Status.UNCHECKED;
+
+        long expected;
+        try {
+            expected = Long.parseLong(text.substring(start + TRAILER.length(), end).trim(), 16);
+        } catch (NumberFormatException ex) {
+            return Status.DAMAGED;
+        }
+
+        long covered = size - tail.length + start;
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            long remaining = covered;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) return Status.DAMAGED;
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return crc.getValue() == expected ? Status.OK : Status.DAMAGED;
+    }
+
+    private static Status verifyCompressed(File file) {
+        try (InputStream in = Compression.open(file)) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return Status.OK;
+        } catch (IOException ex) {
+            return Status.DAMAGED;
+        }
+    }
+}
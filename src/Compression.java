@@ -0,0 +1,55 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+final class Compression {
+    private static final boolean ENABLED = Boolean.getBoolean("byebyemoney.compress");
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private Compression() {
+    }
+
+    static void write(File file, AtomicFiles.Content content) throws IOException {
+        if (!ENABLED) {
+            AtomicFiles.write(file, content);
+            return;
+        }
+
+        AtomicFiles.write(file, out -> {
+            GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+            content.writeTo(gzip);
+            gzip.finish();
+        });
+    }
+
+    static void write(File file, byte[] bytes) throws IOException {
+        write(file, out -> out.write(bytes));
+    }
+
+    static InputStream open(File file) throws IOException {
+        return detect(new FileInputStream(file));
+    }
+
+    static InputStream detect(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+
+        if (first == (GZIPInputStream.GZIP_MAGIC & 0xFF) && second == GZIPInputStream.GZIP_MAGIC >>> 8) {
+            return new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return buffered;
+    }
+
+    static boolean isCompressed(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == (GZIPInputStream.GZIP_MAGIC & 0xFF) && in.read() == GZIPInputStream.GZIP_MAGIC >>> 8;
+        }
+    }
+}
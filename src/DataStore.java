@@ -2,170 +2,779 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
 import javax.xml.transform.OutputKeys;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
 
-public class DataStore {
-    String filename = "data/users.xml";
+public final class DataStore implements Storage {
+    String dataDir = "data";
+    File usersDir = new File(dataDir, "users");
+    File categoriesFile = new File(dataDir, "categories.xml");
+    long journalCompactBytes = Long.getLong("byebyemoney.journal.compactBytes", 64 * 1024);
+    UserIndex userIndex = new UserIndex(new File(usersDir, "users.index"));
+    private final StripedLocks userLocks = new StripedLocks(new File(usersDir, "users.lock"), 64);
+    private final StripedLocks globalLocks = new StripedLocks(new File(dataDir, "data.lock"), 2);
+    private final XMLInputFactory inputFactory = newInputFactory();
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newDefaultFactory();
+    private final SecureRandom snapshotIds = new SecureRandom();
+    private final DocumentBuilderFactory documentBuilderFactory = newDocumentBuilderFactory();
+    private final Map<String, CachedUser> userCache = new ConcurrentHashMap<>();
+    private final Set<File> verified = ConcurrentHashMap.newKeySet();
+    private final Map<String, StoredVersion> storedVersions = new ConcurrentHashMap<>();
+
+    private static final Section[] SECTIONS = {
+        Section.TRANSACTIONS, Section.GOALS, Section.RECURRING, Section.SAVINGS_GOALS
+    };
+
+    private interface XmlContent {
+        void write(XMLStreamWriter writer) throws XMLStreamException;
+    }
+
+    private record Partition(String month, String file, int count, int min, int max) {
+        boolean overlaps(int startDate, int endDate) {
+            return max >= startDate && min <= endDate;
+        }
+    }
+
+    private record TransactionCatalog(int replayFrom, List<Partition> partitions, List<Transaction> inline) {
+    }
+
+    private record FileStamp(long lastModified, long size) {
+        static FileStamp of(File file) {
+            return new FileStamp(file.lastModified(), file.length());
+        }
+    }
+
+    private record CachedUser(FileStamp userStamp, FileStamp journalStamp, User user) {
+        static CachedUser of(File userFile, File journalFile, User user) {
+            return new CachedUser(FileStamp.of(userFile), FileStamp.of(journalFile), user);
+        }
+
+        boolean isFresh(File userFile, File journalFile) {
+            return userStamp.equals(FileStamp.of(userFile)) && journalStamp.equals(FileStamp.of(journalFile));
+        }
+    }
+
+    private record StoredVersion(FileStamp userStamp, FileStamp journalStamp, long version) {
+        static StoredVersion of(File userFile, File journalFile, long version) {
+            return new StoredVersion(FileStamp.of(userFile), FileStamp.of(journalFile), version);
+        }
+
+        boolean isFresh(File userFile, File journalFile) {
+            return userStamp.equals(FileStamp.of(userFile)) && journalStamp.equals(FileStamp.of(journalFile));
+        }
+    }
 
     public DataStore() {
         init();
     }
 
-
+    @Override
+    @SuppressWarnings("try")
     public User getUser(String username) {
-        Document doc;
+        try (StripedLocks.Hold hold = userLocks.read(username)) {
+            User user = loadUser(username);
+            return user != null ? user.copy() : null;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    private User loadUser(String username) {
+        File file = userFile(username);
+        if (!file.exists()) {
+            userCache.remove(username);
+            return null;
+        }
+
+        CachedUser cached = userCache.get(username);
+        if (cached != null && cached.isFresh(file, journalFile(username))) {
+            return cached.user();
+        }
+
         User user = null;
-        try {
-            doc = docFromFile(filename);
-            XPathFactory factory = XPathFactory.newInstance();
-            XPath xpath = factory.newXPath();
-            var query = String.format("//user[descendant::username[text()='%s']]", username);
-            Node nodeUser = (Node) xpath
-                    .compile(query)
-                    .evaluate(doc, XPathConstants.NODE);
-
-            if (nodeUser == null) return null;
-
-            String uname = ((Element)nodeUser).getElementsByTagName("username").item(0).getTextContent();
-            String password = ((Element)nodeUser).getElementsByTagName("password").item(0).getTextContent();
-            System.out.println(uname + "|" + password);
-            user = new User(username, password);
-
-            Node currencySymbolNode = ((Element)nodeUser).getElementsByTagName("currencySymbol").item(0);
-            if (currencySymbolNode != null) {
-                user.setCurrencySymbol(currencySymbolNode.getTextContent());
-            }
-
-            Node savingsGoalsNode = ((Element)nodeUser).getElementsByTagName("savingsGoals").item(0);
-            if (savingsGoalsNode != null && savingsGoalsNode.hasChildNodes()) {
-                NodeList savingsGoals = savingsGoalsNode.getChildNodes();
-                for (int i = 0; i < savingsGoals.getLength(); i++) {
-                    Node nodeSavingsGoal = savingsGoals.item(i);
-                    if (nodeSavingsGoal.getNodeType() == Node.TEXT_NODE) continue;
-
-                    Node nameNode = ((Element)nodeSavingsGoal).getElementsByTagName("name").item(0);
-                    Node targetAmountNode = ((Element)nodeSavingsGoal).getElementsByTagName("targetAmount").item(0);
-                    Node currentAmountNode = ((Element)nodeSavingsGoal).getElementsByTagName("currentAmount").item(0);
-
-                    if (nameNode != null && targetAmountNode != null && currentAmountNode != null) {
-                        String name = nameNode.getTextContent();
-                        double targetAmount = Double.parseDouble(targetAmountNode.getTextContent());
-                        double currentAmount = Double.parseDouble(currentAmountNode.getTextContent());
-
-                        SavingsGoal savingsGoal = new SavingsGoal(name, targetAmount, currentAmount);
-                        user.savingsGoals.add(savingsGoal);
+        Set<Section> inline = EnumSet.noneOf(Section.class);
+        try (InputStream in = Compression.open(file)) {
+            reportIfDamaged(file, username + ": profile");
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                if (reader.nextTag() == XMLStreamConstants.START_ELEMENT && "user".equals(reader.getLocalName())) {
+                    long snapshotId = longAttribute(reader, "journal");
+                    long version = longAttribute(reader, "version");
+                    user = readUser(reader, username, inline);
+                    if (user != null) {
+                        user.snapshotId = snapshotId;
+                        user.version = version;
                     }
                 }
+            } finally {
+                reader.close();
             }
 
-            Node nodeTransactions = ((Element)nodeUser).getElementsByTagName("transactions").item(0);
-
-            if (nodeTransactions != null && nodeTransactions.hasChildNodes()) {
-                NodeList transactions = nodeTransactions.getChildNodes();
-                for (int i = 0; i < transactions.getLength(); i++){
-                    Node nodeTransaction = transactions.item(i);
-                    if (nodeTransaction.getNodeType() == Node.TEXT_NODE) continue;
-                    var date = ((Element)nodeTransaction).getElementsByTagName("date").item(0).getTextContent();
-                    var description = ((Element)nodeTransaction).getElementsByTagName("description").item(0).getTextContent();
-                    var amount = Double.parseDouble(((Element)nodeTransaction).getElementsByTagName("amount").item(0).getTextContent());
-                    var type = TransactionType.valueOf(((Element)nodeTransaction).getElementsByTagName("type").item(0).getTextContent());
+            if (user != null) {
+                journalFor(username).discardUnless(user.snapshotId);
+                user.version += journalFor(username).read(user.snapshotId).size();
 
-                    String category = "Other";
-                    Node categoryNode = ((Element)nodeTransaction).getElementsByTagName("category").item(0);
-                    if (categoryNode != null) {
-                        category = categoryNode.getTextContent();
+                user.markClean(EnumSet.allOf(Section.class));
+                if (!inline.isEmpty()) {
+                    user.markDirty(inline);
+                    user.markDirty(Section.PROFILE);
+                    for (Section section : inline) {
+                        replayJournal(user, section, 0);
                     }
+                }
 
-                    Transaction transaction = new Transaction(date, description, amount, type, category);
-                    user.transactions.add(transaction);
+                Set<Section> deferred = EnumSet.noneOf(Section.class);
+                for (Section section : SECTIONS) {
+                    if (!inline.contains(section)) deferred.add(section);
                 }
+                user.loadLazily(deferred, new Loader());
+
+                user.share();
+                userCache.put(username, CachedUser.of(file, journalFile(username), user));
+                storedVersions.put(username, StoredVersion.of(file, journalFile(username), user.version));
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+
+        return user;
+    }
+
+    private class Loader implements SectionLoader {
+        @Override
+        @SuppressWarnings("try")
+        public void load(User user, Section section) {
+            try (StripedLocks.Hold hold = userLocks.read(user.getUsername())) {
+                loadSection(user, section);
+            } catch (IOException ex) {
+                ex.printStackTrace();
             }
+        }
 
-            Node nodeGoals = ((Element)nodeUser).getElementsByTagName("goals").item(0);
+        @Override
+        @SuppressWarnings("try")
+        public TransactionTable loadTransactions(User user, int startDate, int endDate) {
+            try (StripedLocks.Hold hold = userLocks.read(user.getUsername())) {
+                return loadTransactionRange(user, startDate, endDate);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                return null;
+            }
+        }
 
-            if (nodeGoals != null && nodeGoals.hasChildNodes()) {
-                NodeList goals = nodeGoals.getChildNodes();
-                for (int i = 0; i < goals.getLength(); i++) {
-                    Node nodeGoal = goals.item(i);
-                    if (nodeGoal.getNodeType() == Node.TEXT_NODE) continue;
+        @Override
+        @SuppressWarnings("try")
+        public int countTransactions(User user) {
+            try (StripedLocks.Hold hold = userLocks.read(user.getUsername())) {
+                return countStoredTransactions(user);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                return -1;
+            }
+        }
+    }
 
-                    Node categoryNode = ((Element)nodeGoal).getElementsByTagName("categoryName").item(0);
-                    Node amountNode = ((Element)nodeGoal).getElementsByTagName("monthlyAmount").item(0);
+    private TransactionTable loadTransactionRange(User user, int startDate, int endDate) {
+        try {
+            TransactionTable transactions = new TransactionTable();
+            int from = readTransactions(user, startDate, endDate, transactions);
 
-                    if (categoryNode != null && amountNode != null) {
-                        String category = categoryNode.getTextContent();
-                        double amount = Double.parseDouble(amountNode.getTextContent());
+            for (String[] entry : pendingTransactionEntries(user, from)) {
+                if (!"ADD".equals(entry[0])) return null;
 
-                        BudgetGoal goal = new BudgetGoal(category, amount);
-                        user.goals.add(goal);
-                    }
+                Transaction transaction = addedTransaction(entry);
+                if (inRange(transaction.getDate(), startDate, endDate)) {
+                    transactions.add(transaction);
                 }
             }
+            return transactions;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
 
-            Node nodeRecurring = ((Element)nodeUser).getElementsByTagName("recurringTransactions").item(0);
+    private int countStoredTransactions(User user) {
+        try {
+            TransactionCatalog catalog = readTransactionCatalog(user);
+            int count = catalog.inline().size();
+            for (Partition partition : catalog.partitions()) {
+                count += partition.count();
+            }
 
-            if (nodeRecurring != null && nodeRecurring.hasChildNodes()) {
-                NodeList recurrings = nodeRecurring.getChildNodes();
-                for (int i = 0; i < recurrings.getLength(); i++) {
-                    Node nodeRec = recurrings.item(i);
-                    if (nodeRec.getNodeType() == Node.TEXT_NODE) continue;
+            for (String[] entry : pendingTransactionEntries(user, catalog.replayFrom())) {
+                if ("ADD".equals(entry[0])) count++;
+                else if ("DELETE".equals(entry[0]) || "DELETE_ID".equals(entry[0])) count--;
+            }
+            return count;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return -1;
+        }
+    }
 
-                    var description = ((Element)nodeRec).getElementsByTagName("description").item(0).getTextContent();
-                    var amount = Double.parseDouble(((Element)nodeRec).getElementsByTagName("amount").item(0).getTextContent());
-                    var type = TransactionType.valueOf(((Element)nodeRec).getElementsByTagName("type").item(0).getTextContent());
-                    var category = ((Element)nodeRec).getElementsByTagName("category").item(0).getTextContent();
-                    var nextDueDate = ((Element)nodeRec).getElementsByTagName("nextDueDate").item(0).getTextContent();
+    private List<String[]> pendingTransactionEntries(User user, int from) throws IOException {
+        List<String[]> entries = journalFor(user.getUsername()).read(user.snapshotId);
+        List<String[]> pending = new ArrayList<>();
+        for (int i = from; i < entries.size(); i++) {
+            if (sectionOf(entries.get(i)) == Section.TRANSACTIONS) {
+                pending.add(entries.get(i));
+            }
+        }
+        return pending;
+    }
+
+    private void loadSection(User user, Section section) {
+        try {
+            replayJournal(user, section, readSectionFile(user, section));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void replayJournal(User user, Section section, int from) throws IOException {
+        List<String[]> entries = journalFor(user.getUsername()).read(user.snapshotId);
+
+        for (int i = from; i < entries.size(); i++) {
+            String[] entry = entries.get(i);
+            if (sectionOf(entry) != section) continue;
+
+            try {
+                applyJournalEntry(user, entry);
+            } catch (RuntimeException ex) {
+                System.err.printf("Skipping unreadable journal entry for %s: %s%n", user.getUsername(), String.join(" ", entry));
+            }
+        }
+    }
+
+    private static Transaction addedTransaction(String[] entry) {
+        long id = entry.length > 6 ? Long.parseLong(entry[6]) : 0;
+        return new Transaction(id, Dates.parse(entry[1]), entry[2], Money.parse(entry[3]), TransactionType.valueOf(entry[4]), entry[5]);
+    }
 
-                    RecurringTransaction recurring = new RecurringTransaction(description, amount, type, category, nextDueDate);
-                    user.recurringTransactions.add(recurring);
+    private static Section sectionOf(String[] entry) {
+        switch (entry[0]) {
+        case "ADD":
+        case "EDIT":
+        case "DELETE":
+        case "EDIT_ID":
+        case "DELETE_ID":
+            return Section.TRANSACTIONS;
+        case "GOAL":
+        case "GOAL_DELETE":
+            return Section.GOALS;
+        case "RECURRING":
+            return Section.RECURRING;
+        default:
+            return Section.PROFILE;
+        }
+    }
+
+    private void applyJournalEntry(User user, String[] entry) {
+        switch (entry[0]) {
+        case "ADD":
+            user.getTransactions().add(addedTransaction(entry));
+            break;
+        case "EDIT":
+            applyEdit(user.getTransactions().get(Integer.parseInt(entry[1])), entry);
+            break;
+        case "EDIT_ID":
+            Transaction transaction = user.getTransactions().byId(Long.parseLong(entry[1]));
+            if (transaction == null) throw new IllegalArgumentException(entry[1]);
+            applyEdit(transaction, entry);
+            break;
+        case "DELETE":
+            user.getTransactions().remove(Integer.parseInt(entry[1]));
+            break;
+        case "DELETE_ID":
+            user.getTransactions().delete(Long.parseLong(entry[1]));
+            break;
+        case "GOAL":
+            BudgetGoal goal = user.getGoals().stream().filter(g -> g.getCategory().equals(entry[1])).findFirst().orElse(null);
+            if (goal != null) {
+                goal.setAmount(Money.parse(entry[2]));
+            } else {
+                user.getGoals().add(new BudgetGoal(entry[1], Money.parse(entry[2])));
+            }
+            break;
+        case "GOAL_DELETE":
+            user.getGoals().removeIf(g -> g.getCategory().equals(entry[1]));
+            break;
+        case "RECURRING":
+            user.getRecurringTransactions().get(Integer.parseInt(entry[1])).setNextDueDate(entry[2]);
+            break;
+        default:
+            throw new IllegalArgumentException(entry[0]);
+        }
+    }
+
+    private static void applyEdit(Transaction transaction, String[] entry) {
+        transaction.setDate(Dates.parse(entry[2]));
+        transaction.setDescription(entry[3]);
+        transaction.setAmount(Money.parse(entry[4]));
+        transaction.setCategory(entry[6]);
+    }
+
+    @Override
+    public void addTransaction(User user, Transaction transaction) {
+        appendToJournal(user, "ADD", Dates.format(transaction.getDate()), transaction.getDescription(),
+                Money.format(transaction.getAmount()), transaction.getType().toString(), transaction.getCategory(),
+                String.valueOf(transaction.getId()));
+    }
+
+    @Override
+    public void editTransaction(User user, Transaction transaction) {
+        appendToJournal(user, "EDIT_ID", String.valueOf(transaction.getId()), Dates.format(transaction.getDate()), transaction.getDescription(),
+                Money.format(transaction.getAmount()), transaction.getType().toString(), transaction.getCategory());
+    }
+
+    @Override
+    public void deleteTransaction(User user, long id) {
+        appendToJournal(user, "DELETE_ID", String.valueOf(id));
+    }
+
+    @Override
+    public void setGoal(User user, BudgetGoal goal) {
+        appendToJournal(user, "GOAL", goal.getCategory(), Money.format(goal.getAmount()));
+    }
+
+    @Override
+    public void deleteGoal(User user, String category) {
+        appendToJournal(user, "GOAL_DELETE", category);
+    }
+
+    @Override
+    public void advanceRecurring(User user, int index) {
+        appendToJournal(user, "RECURRING", String.valueOf(index), user.getRecurringTransactions().get(index).getNextDueDate());
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void exportUser(String username, OutputStream out) throws IOException {
+        try (StripedLocks.Hold hold = userLocks.read(username)) {
+            User user = getUser(username);
+            if (user == null) throw new IOException("No data for user " + username);
+
+            writeDocument(out, writer -> {
+                writer.writeStartElement("user");
+                writeProfile(writer, user, 1);
+                for (Section section : SECTIONS) {
+                    writeSection(writer, user, section, 1, null);
+                }
+                writer.writeCharacters("\n");
+                writer.writeEndElement();
+            });
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void importUser(String username, InputStream in) throws IOException {
+        try (StripedLocks.Hold hold = userLocks.write(username)) {
+            User user = null;
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(Compression.detect(in));
+            try {
+                if (reader.nextTag() == XMLStreamConstants.START_ELEMENT && "user".equals(reader.getLocalName())) {
+                    user = readUser(reader, username, EnumSet.noneOf(Section.class));
                 }
+            } finally {
+                reader.close();
             }
+            if (user == null) throw new IOException("Backup does not contain user " + username);
 
-        } catch (Exception ex) {
+            // Written against the current journal, so a crash before the new head lands skips it instead of replaying it.
+            User current = getUser(username);
+            if (current != null) {
+                user.snapshotId = current.snapshotId;
+                user.version = current.version + 1;
+            }
+            writeSnapshot(user, true);
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @SuppressWarnings("try")
+    private void appendToJournal(User user, String... fields) {
+        String username = user.getUsername();
+        try (StripedLocks.Hold hold = userLocks.write(username)) {
+            if (!userFile(username).exists()) {
+                for (Section section : Section.values()) {
+                    if (user.isLoaded(section)) user.markDirty(section);
+                }
+                writeSnapshot(user, true);
+                return;
+            }
+
+            checkVersion(user);
+            userCache.remove(username);
+            Journal journal = journalFor(username);
+            journal.append(user.snapshotId, fields);
+            user.version++;
+            storedVersions.put(username, StoredVersion.of(userFile(username), journalFile(username), user.version));
+
+            if (journal.size() > journalCompactBytes) {
+                writeSnapshot(user, true);
+            }
+        } catch (IOException | XMLStreamException ex) {
             ex.printStackTrace();
         }
+    }
+
+    private Journal journalFor(String username) {
+        return new Journal(journalFile(username).toPath());
+    }
+
+    private File journalFile(String username) {
+        return new File(usersDir, Storage.fileNameFor(username) + ".journal");
+    }
+
+    private File sectionFile(String username, Section section) {
+        return new File(new File(usersDir, Storage.fileNameFor(username) + ".d"), sectionElement(section) + ".xml");
+    }
+
+    private File partitionDir(String username) {
+        return new File(new File(usersDir, Storage.fileNameFor(username) + ".d"), "transactions");
+    }
+
+    private static String sectionElement(Section section) {
+        switch (section) {
+        case TRANSACTIONS: return "transactions";
+        case GOALS: return "goals";
+        case RECURRING: return "recurringTransactions";
+        case SAVINGS_GOALS: return "savingsGoals";
+        default: throw new IllegalArgumentException(section.toString());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public boolean userExists(String username) {
+        try (StripedLocks.Hold hold = globalLocks.read("users.index")) {
+            return userIndex.get(username) != null;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return userFile(username).exists();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public boolean checkCredentials(String username, String password) {
+        try (StripedLocks.Hold hold = globalLocks.read("users.index")) {
+            UserIndex.Entry entry = userIndex.get(username);
+            return entry != null && entry.password().equals(password);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public File userFile(String username) {
+        return new File(usersDir, Storage.fileNameFor(username) + ".xml");
+    }
+
+    private User readUser(XMLStreamReader reader, String username, Set<Section> inline) throws XMLStreamException {
+        User user = null;
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+
+            if (user == null && !"username".equals(element)) {
+                skipElement(reader);
+                continue;
+            }
+
+            switch (element) {
+            case "username":
+                String name = reader.getElementText();
+                if (username != null && !username.equals(name)) {
+                    skipElement(reader);
+                    return null;
+                }
+                user = new User(name, null);
+                break;
+            case "password":
+                user.setPassword(reader.getElementText());
+                break;
+            case "currencySymbol":
+                user.setCurrencySymbol(reader.getElementText());
+                break;
+            default:
+                Section section = sectionFor(element);
+                if (section != null) {
+                    readSectionContent(reader, user, section);
+                    inline.add(section);
+                } else {
+                    skipElement(reader);
+                }
+                break;
+            }
+        }
 
         return user;
     }
 
-    public void addUser(User user) {
-        Document doc;
-        try {
-            doc = docFromFile(filename);
-            Element userNode = doc.createElement("user");
-            Element username = doc.createElement("username");
-            username.appendChild(doc.createTextNode(user.getUsername()));
-            Element password = doc.createElement("password");
-            password.appendChild(doc.createTextNode(user.getPassword()));
-            Element currencySymbol = doc.createElement("currencySymbol");
-            currencySymbol.appendChild(doc.createTextNode(user.getCurrencySymbol()));
-            userNode.appendChild(username);
-            userNode.appendChild(password);
-            userNode.appendChild(currencySymbol);
-            doc.getDocumentElement()
-                    .getElementsByTagName("users").item(0)
-                    .appendChild(userNode);
-
-            docToFile(doc, filename);
+    private static Section sectionFor(String element) {
+        for (Section section : SECTIONS) {
+            if (sectionElement(section).equals(element)) return section;
+        }
+        return null;
+    }
+
+    private int readSectionFile(User user, Section section) throws IOException, XMLStreamException {
+        if (section == Section.TRANSACTIONS) {
+            return readTransactions(user, Integer.MIN_VALUE, Integer.MAX_VALUE, user.getTransactions());
+        }
 
+        File file = sectionFile(user.getUsername(), section);
+        if (!file.exists()) return 0;
+
+        reportIfDamaged(file, user.getUsername() + ": " + sectionElement(section));
+        try (InputStream in = Compression.open(file)) {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !sectionElement(section).equals(reader.getLocalName())) {
+                    return 0;
+                }
+
+                String applied = reader.getAttributeValue(null, "applied");
+                readSectionContent(reader, user, section);
+                return replayFrom(user, applied);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    // "applied" is the journal id and entry count already folded into a section file.
+    private static int replayFrom(User user, String applied) {
+        if (applied == null) return 0;
+        String[] parts = applied.split(":");
+        return Long.parseLong(parts[0]) == user.snapshotId ? Integer.parseInt(parts[1]) : 0;
+    }
+
+    private int readTransactions(User user, int startDate, int endDate, List<Transaction> into) throws IOException, XMLStreamException {
+        TransactionCatalog catalog = readTransactionCatalog(user);
+        for (Transaction transaction : catalog.inline()) {
+            if (inRange(transaction.getDate(), startDate, endDate)) into.add(transaction);
+        }
+
+        File dir = partitionDir(user.getUsername());
+        for (Partition partition : catalog.partitions()) {
+            if (!partition.overlaps(startDate, endDate)) continue;
+
+            File file = new File(dir, partition.file());
+            reportIfDamaged(file, user.getUsername() + ": transactions " + partition.file().substring(0, 6));
+            try (InputStream in = Compression.open(file)) {
+                XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+                try {
+                    reader.nextTag();
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        Transaction transaction = readTransaction(reader);
+                        if (inRange(transaction.getDate(), startDate, endDate)) into.add(transaction);
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+        return catalog.replayFrom();
+    }
+
+    private TransactionCatalog readTransactionCatalog(User user) throws IOException, XMLStreamException {
+        List<Partition> partitions = new ArrayList<>();
+        List<Transaction> inline = new ArrayList<>();
+        File file = sectionFile(user.getUsername(), Section.TRANSACTIONS);
+        if (!file.exists()) return new TransactionCatalog(0, partitions, inline);
+
+        reportIfDamaged(file, user.getUsername() + ": transactions");
+        try (InputStream in = Compression.open(file)) {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !"transactions".equals(reader.getLocalName())) {
+                    return new TransactionCatalog(0, partitions, inline);
+                }
+
+                String applied = reader.getAttributeValue(null, "applied");
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    if ("partition".equals(reader.getLocalName())) {
+                        partitions.add(new Partition(reader.getAttributeValue(null, "month"),
+                                reader.getAttributeValue(null, "file"),
+                                Integer.parseInt(reader.getAttributeValue(null, "count")),
+                                Dates.parse(reader.getAttributeValue(null, "min")),
+                                Dates.parse(reader.getAttributeValue(null, "max"))));
+                        skipElement(reader);
+                    } else {
+                        inline.add(readTransaction(reader));
+                    }
+                }
+                return new TransactionCatalog(replayFrom(user, applied), partitions, inline);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static boolean inRange(int date, int startDate, int endDate) {
+        return date >= startDate && date <= endDate;
+    }
+
+    private static String monthOf(int date) {
+        return String.format("%06d", Dates.month(date));
+    }
+
+    private void readSectionContent(XMLStreamReader reader, User user, Section section) throws XMLStreamException {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (section) {
+            case TRANSACTIONS:
+                user.getTransactions().add(readTransaction(reader));
+                break;
+            case GOALS:
+                BudgetGoal goal = readGoal(reader);
+                if (goal != null) user.getGoals().add(goal);
+                break;
+            case RECURRING:
+                user.getRecurringTransactions().add(readRecurring(reader));
+                break;
+            case SAVINGS_GOALS:
+                SavingsGoal savingsGoal = readSavingsGoal(reader);
+                if (savingsGoal != null) user.getSavingsGoals().add(savingsGoal);
+                break;
+            default:
+                skipElement(reader);
+                break;
+            }
+        }
+    }
+
+    private Transaction readTransaction(XMLStreamReader reader) throws XMLStreamException {
+        long id = longAttribute(reader, "id");
+        int date = 0;
+        String description = null;
+        long amount = 0;
+        TransactionType type = null;
+        String category = "Other";
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+            case "date": date = Dates.parse(reader.getElementText()); break;
+            case "description": description = reader.getElementText(); break;
+            case "amount": amount = Money.parse(reader.getElementText()); break;
+            case "type": type = TransactionType.valueOf(reader.getElementText()); break;
+            case "category": category = reader.getElementText(); break;
+            default: skipElement(reader); break;
+            }
+        }
+
+        return new Transaction(id, date, description, amount, type, category);
+    }
+
+    private BudgetGoal readGoal(XMLStreamReader reader) throws XMLStreamException {
+        String category = null;
+        String amount = null;
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+            case "categoryName": category = reader.getElementText(); break;
+            case "monthlyAmount": amount = reader.getElementText(); break;
+            default: skipElement(reader); break;
+            }
+        }
+
+        if (category == null || amount == null) return null;
+        return new BudgetGoal(category, Money.parse(amount));
+    }
+
+    private RecurringTransaction readRecurring(XMLStreamReader reader) throws XMLStreamException {
+        String description = null;
+        long amount = 0;
+        TransactionType type = null;
+        String category = null;
+        String nextDueDate = null;
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+            case "description": description = reader.getElementText(); break;
+            case "amount": amount = Money.parse(reader.getElementText()); break;
+            case "type": type = TransactionType.valueOf(reader.getElementText()); break;
+            case "category": category = reader.getElementText(); break;
+            case "nextDueDate": nextDueDate = reader.getElementText(); break;
+            default: skipElement(reader); break;
+            }
+        }
+
+        return new RecurringTransaction(description, amount, type, category, nextDueDate);
+    }
+
+    private SavingsGoal readSavingsGoal(XMLStreamReader reader) throws XMLStreamException {
+        String name = null;
+        String targetAmount = null;
+        String currentAmount = null;
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+            case "name": name = reader.getElementText(); break;
+            case "targetAmount": targetAmount = reader.getElementText(); break;
+            case "currentAmount": currentAmount = reader.getElementText(); break;
+            default: skipElement(reader); break;
+            }
+        }
+
+        if (name == null || targetAmount == null || currentAmount == null) return null;
+        return new SavingsGoal(name, Money.parse(targetAmount), Money.parse(currentAmount));
+    }
+
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void addUser(User user) {
+        try (StripedLocks.Hold hold = userLocks.write(user.getUsername())) {
+            writeSnapshot(user, true);
         } catch (Exception ex) {
             ex.printStackTrace();
         }
@@ -185,226 +794,463 @@ public class DataStore {
     }
 }
 
-    private void docToFile(Document doc, String nameFile) throws TransformerException {
+    private void docToFile(Document doc, String nameFile) throws TransformerException, IOException {
         removeWhitespaceNodes(doc.getDocumentElement());
         Transformer transformer = TransformerFactory.newInstance().newTransformer();
         transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
         transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.transform(new DOMSource(doc), new StreamResult(new File(nameFile)));
-    }
 
-    public Document docFromFile(String nameFile) throws SAXException, IOException, ParserConfigurationException {
-        File xmlFile = new File(nameFile);
-        DocumentBuilderFactory factory =
-                DocumentBuilderFactory.newDefaultInstance();
+        Compression.write(new File(nameFile), out -> {
+            CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32C());
+            try {
+                transformer.transform(new DOMSource(doc), new StreamResult(checked));
+            } catch (TransformerException ex) {
+                throw new IOException(ex);
+            }
+            checked.write('\n');
+            Checksums.writeTrailer(out, checked.getChecksum().getValue());
+        });
+    }
 
+    private static DocumentBuilderFactory newDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newDefaultInstance();
         factory.setIgnoringElementContentWhitespace(true);
-        Document doc = factory.newDocumentBuilder().parse(xmlFile);
-        doc.getDocumentElement().normalize();
+        return factory;
+    }
 
-        return doc;
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
     }
 
+    @SuppressWarnings("try")
     private void init() {
         try {
-            File file = new File(filename);
-            if (!file.exists()) {
-                Document document = DocumentBuilderFactory
-                    .newDefaultInstance()
-                    .newDocumentBuilder()
-                    .newDocument();
-
-                Element root = document.createElement("data");
-                document.appendChild(root);
-
-                Element users = document.createElement("users");
-                root.appendChild(users);
-
-                docToFile(document, filename);
+            usersDir.mkdirs();
+            if (migrateMonolithicFile() || !userIndex.exists()) {
+                try (StripedLocks.Hold hold = globalLocks.write("users.index")) {
+                    rebuildUserIndex();
+                }
             }
         } catch (Exception ex) {
             ex.printStackTrace();
         }
     }
 
-    void updateUser(User user) {
-        Document doc;
-        try {
-            doc = docFromFile(filename);
+    private void reportIfDamaged(File file, String section) throws IOException {
+        if (verified.add(file) && file.exists() && Checksums.verifyTrailer(file) == Checksums.Status.DAMAGED) {
+            System.err.printf("Damaged data file %s (%s)%n", file.getPath(), section);
+        }
+    }
 
-            XPathFactory factory = XPathFactory.newInstance();
-            XPath xpath = factory.newXPath();
-            var query = String.format("//user[descendant::username[text()='%s']]", user.getUsername());
-            Node nodeUser = (Node) xpath
-                    .compile(query)
-                    .evaluate(doc, XPathConstants.NODE);
+    @SuppressWarnings("try")
+    private boolean migrateMonolithicFile() throws IOException, XMLStreamException {
+        File legacy = new File(dataDir, "users.xml");
+        if (!legacy.exists()) return false;
+
+        List<String> incomeCats = new ArrayList<>();
+        List<String> expenseCats = new ArrayList<>();
+
+        try (InputStream in = Compression.open(legacy)) {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) continue;
+
+                    if ("user".equals(reader.getLocalName())) {
+                        User user = readUser(reader, null, EnumSet.noneOf(Section.class));
+                        if (user != null) {
+                            try (StripedLocks.Hold hold = userLocks.write(user.getUsername())) {
+                                writeSnapshot(user, true);
+                            }
+                        }
+                    } else if ("categories".equals(reader.getLocalName())) {
+                        readCategories(reader, incomeCats, expenseCats);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        if (!incomeCats.isEmpty() || !expenseCats.isEmpty()) {
+            saveCategories(incomeCats, expenseCats);
+        }
 
-            if (nodeUser == null) return;
+        Files.move(legacy.toPath(), new File(dataDir, "users.xml.migrated").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
 
-            Node passwordNode = ((Element)nodeUser).getElementsByTagName("password").item(0);
-            if (passwordNode != null) {
-                passwordNode.setTextContent(user.getPassword());
-            }
+    private void rebuildUserIndex() throws IOException, XMLStreamException {
+        Map<String, UserIndex.Entry> entries = new HashMap<>();
+        File[] files = usersDir.listFiles((dir, name) -> name.endsWith(".xml"));
+
+        for (File file : files != null ? files : new File[0]) {
+            try (InputStream in = Compression.open(file)) {
+                XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+                try {
+                    String username = null;
+                    String password = null;
+
+                    if (reader.nextTag() == XMLStreamConstants.START_ELEMENT && "user".equals(reader.getLocalName())) {
+                        while (password == null && reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                            switch (reader.getLocalName()) {
+                            case "username": username = reader.getElementText(); break;
+                            case "password": password = reader.getElementText(); break;
+                            default: skipElement(reader); break;
+                            }
+                        }
+                    }
 
-            Node currencySymbolNode = ((Element)nodeUser).getElementsByTagName("currencySymbol").item(0);
-            if (currencySymbolNode != null) {
-                currencySymbolNode.setTextContent(user.getCurrencySymbol());
-            } else {
-                Element currencySymbol = doc.createElement("currencySymbol");
-                currencySymbol.appendChild(doc.createTextNode(user.getCurrencySymbol()));
-                nodeUser.appendChild(currencySymbol);
+                    if (username != null && password != null) {
+                        entries.put(username, new UserIndex.Entry(username, file.getName(), password));
+                    }
+                } finally {
+                    reader.close();
+                }
             }
+        }
 
-            Node nodeTransactions = ((Element)nodeUser).getElementsByTagName("transactions").item(0);
+        userIndex.rewrite(entries);
+    }
 
-            if (nodeTransactions != null) {
-                nodeUser.removeChild(nodeTransactions);
+    private void readCategories(XMLStreamReader reader, List<String> incomeCats, List<String> expenseCats) throws XMLStreamException {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (!"category".equals(reader.getLocalName())) {
+                skipElement(reader);
+                continue;
             }
 
-            nodeTransactions = doc.createElement("transactions");
-
-            for (int i = 0; i < user.transactions.size(); i++) {
-                Element nodeTransaction = doc.createElement("transaction");
-                Element date = doc.createElement("date");
-                date.appendChild(doc.createTextNode(user.transactions.get(i).getDate()));
-                Element description = doc.createElement("description");
-                description.appendChild(doc.createTextNode(user.transactions.get(i).getDescription()));
-                Element amount = doc.createElement("amount");
-                amount.appendChild(doc.createTextNode(user.transactions.get(i).getAmount() + ""));
-                Element type = doc.createElement("type");
-                type.appendChild(doc.createTextNode(user.transactions.get(i).getType().toString()));
-                Element category = doc.createElement("category");
-                category.appendChild(doc.createTextNode(user.transactions.get(i).getCategory()));
+            String name = null;
+            String type = null;
 
-                nodeTransaction.appendChild(date);
-                nodeTransaction.appendChild(description);
-                nodeTransaction.appendChild(amount);
-                nodeTransaction.appendChild(type);
-                nodeTransaction.appendChild(category);
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                case "name": name = reader.getElementText(); break;
+                case "type": type = reader.getElementText(); break;
+                default: skipElement(reader); break;
+                }
+            }
 
-                nodeTransactions.appendChild(nodeTransaction);
+            if (name == null) continue;
+            if ("INCOME".equals(type)) {
+                incomeCats.add(name);
+            } else if ("EXPENSE".equals(type)) {
+                expenseCats.add(name);
             }
+        }
+    }
 
-            nodeUser.appendChild(nodeTransactions);
+    @Override
+    @SuppressWarnings("try")
+    public void updateUser(User user) {
+        try (StripedLocks.Hold hold = userLocks.write(user.getUsername())) {
+            if (!userFile(user.getUsername()).exists()) return;
+            checkVersion(user);
+
+            user.version++;
+            try {
+                writeSnapshot(user, false);
+            } catch (IOException | XMLStreamException ex) {
+                user.version--;
+                throw ex;
+            }
+        } catch (IOException | XMLStreamException ex) {
+            ex.printStackTrace();
+        }
+    }
 
-            Node nodeGoals = ((Element)nodeUser).getElementsByTagName("goals").item(0);
+    @SuppressWarnings("try")
+    private void writeSnapshot(User user, boolean compact) throws IOException, XMLStreamException {
+        String username = user.getUsername();
+        userCache.remove(username);
+
+        Journal journal = journalFor(username);
+        List<String[]> entries = journal.read(user.snapshotId);
+        Set<Section> sections = user.dirtySections();
+        if (compact) {
+            for (String[] entry : entries) {
+                sections.add(sectionOf(entry));
+            }
+        }
 
-            if (nodeGoals != null) {
-                nodeUser.removeChild(nodeGoals);
+        String applied = user.snapshotId + ":" + entries.size();
+        for (Section section : sections) {
+            if (section != Section.PROFILE) {
+                writeSectionFile(user, section, applied);
             }
+        }
 
-            if (!user.goals.isEmpty()) {
-                Element goalsElement = doc.createElement("goals");
+        long previousId = user.snapshotId;
+        if (compact) user.snapshotId = snapshotIds.nextLong();
 
-                for (BudgetGoal goal : user.goals) {
-                    Element goalElement = doc.createElement("goal");
+        try {
+            writeHead(user, compact ? user.version : user.version - entries.size());
+        } catch (IOException | XMLStreamException ex) {
+            user.snapshotId = previousId;
+            throw ex;
+        }
 
-                    Element categoryName = doc.createElement("categoryName");
-                    categoryName.appendChild(doc.createTextNode(goal.getCategory()));
+        if (compact) journal.delete();
+        try (StripedLocks.Hold hold = globalLocks.write("users.index")) {
+            userIndex.put(new UserIndex.Entry(username, userFile(username).getName(), user.getPassword()));
+        }
 
-                    Element monthlyAmount = doc.createElement("monthlyAmount");
-                    monthlyAmount.appendChild(doc.createTextNode(String.valueOf(goal.getAmount())));
+        storedVersions.put(username, StoredVersion.of(userFile(username), journalFile(username), user.version));
+        user.markClean(sections);
+    }
 
-                    goalElement.appendChild(categoryName);
-                    goalElement.appendChild(monthlyAmount);
+    // The version of a user is the head's base version plus one for each journal entry written on top of that head.
+    private long storedVersion(String username) throws IOException, XMLStreamException {
+        StoredVersion cached = storedVersions.get(username);
+        if (cached != null && cached.isFresh(userFile(username), journalFile(username))) {
+            return cached.version();
+        }
 
-                    goalsElement.appendChild(goalElement);
+        long snapshotId = 0;
+        long version = 0;
+        try (InputStream in = Compression.open(userFile(username))) {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                if (reader.nextTag() == XMLStreamConstants.START_ELEMENT && "user".equals(reader.getLocalName())) {
+                    snapshotId = longAttribute(reader, "journal");
+                    version = longAttribute(reader, "version");
                 }
-
-                nodeUser.appendChild(goalsElement);
-            }
-
-            Node nodeRecurring = ((Element)nodeUser).getElementsByTagName("recurringTransactions").item(0);
-
-            if (nodeRecurring != null) {
-                nodeUser.removeChild(nodeRecurring);
-            }
-
-            Node nodeSavingsGoals = ((Element)nodeUser).getElementsByTagName("savingsGoals").item(0);
-
-            if (nodeSavingsGoals != null) {
-                nodeUser.removeChild(nodeSavingsGoals);
+            } finally {
+                reader.close();
             }
+        }
+        version += journalFor(username).read(snapshotId).size();
+        storedVersions.put(username, StoredVersion.of(userFile(username), journalFile(username), version));
+        return version;
+    }
 
-            if (!user.savingsGoals.isEmpty()) {
-                Element savingsGoalsElement = doc.createElement("savingsGoals");
+    private void checkVersion(User user) throws IOException, XMLStreamException {
+        long stored = storedVersion(user.getUsername());
+        if (stored != user.version) {
+            throw new VersionConflictException(user.getUsername(), user.version, stored);
+        }
+    }
 
-                for (SavingsGoal savingsGoal : user.savingsGoals) {
-                    Element savingsGoalElement = doc.createElement("savingsGoal");
+    private static long longAttribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value != null ? Long.parseLong(value) : 0;
+    }
 
-                    Element name = doc.createElement("name");
-                    name.appendChild(doc.createTextNode(savingsGoal.getName()));
+    private void writeHead(User user, long baseVersion) throws IOException, XMLStreamException {
+        writeFile(userFile(user.getUsername()), writer -> {
+            writer.writeStartElement("user");
+            writer.writeAttribute("journal", String.valueOf(user.snapshotId));
+            writer.writeAttribute("version", String.valueOf(baseVersion));
+            writeProfile(writer, user, 1);
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+        });
+    }
 
-                    Element targetAmount = doc.createElement("targetAmount");
-                    targetAmount.appendChild(doc.createTextNode(String.valueOf(savingsGoal.getTargetAmount())));
+    private void writeSectionFile(User user, Section section, String applied) throws IOException, XMLStreamException {
+        File file = sectionFile(user.getUsername(), section);
+        file.getParentFile().mkdirs();
 
-                    Element currentAmount = doc.createElement("currentAmount");
-                    currentAmount.appendChild(doc.createTextNode(String.valueOf(savingsGoal.getCurrentAmount())));
+        if (section == Section.TRANSACTIONS) {
+            writeTransactionPartitions(user, applied);
+        } else {
+            writeFile(file, writer -> writeSection(writer, user, section, 0, applied));
+        }
+    }
 
-                    savingsGoalElement.appendChild(name);
-                    savingsGoalElement.appendChild(targetAmount);
-                    savingsGoalElement.appendChild(currentAmount);
+    private void writeTransactionPartitions(User user, String applied) throws IOException, XMLStreamException {
+        List<Transaction> transactions = user.getTransactions().inDateOrder();
 
-                    savingsGoalsElement.appendChild(savingsGoalElement);
-                }
+        File dir = partitionDir(user.getUsername());
+        dir.mkdirs();
+        List<Partition> partitions = new ArrayList<>();
 
-                nodeUser.appendChild(savingsGoalsElement);
+        for (int start = 0, end; start < transactions.size(); start = end) {
+            int min = transactions.get(start).getDate();
+            int max = min;
+            for (end = start + 1; end < transactions.size() && Dates.month(transactions.get(end).getDate()) == Dates.month(min); end++) {
+                int date = transactions.get(end).getDate();
+                min = Math.min(min, date);
+                max = Math.max(max, date);
             }
+            String month = monthOf(min);
+
+            List<Transaction> slice = transactions.subList(start, end);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            writeDocument(buffer, writer -> {
+                writer.writeStartElement("transactions");
+                writer.writeAttribute("month", month);
+                writeTransactions(writer, slice, 0);
+                writer.writeCharacters(indent(0));
+                writer.writeEndElement();
+            });
+
+            byte[] bytes = buffer.toByteArray();
+            String name = month + "-" + String.format("%08x", Checksums.crc32c(bytes, 0, bytes.length)) + ".xml";
+            File file = new File(dir, name);
+            if (!file.exists()) {
+                Compression.write(file, bytes);
+            }
+            partitions.add(new Partition(month, name, end - start, min, max));
+        }
 
-            if (!user.recurringTransactions.isEmpty()) {
-                Element recurringElement = doc.createElement("recurringTransactions");
-
-                for (RecurringTransaction recurring : user.recurringTransactions) {
-                    Element recElement = doc.createElement("recurring");
-
-                    Element description = doc.createElement("description");
-                    description.appendChild(doc.createTextNode(recurring.getDescription()));
+        writeFile(sectionFile(user.getUsername(), Section.TRANSACTIONS), writer -> {
+            writer.writeStartElement("transactions");
+            writer.writeAttribute("applied", applied);
+            for (Partition partition : partitions) {
+                writer.writeCharacters(indent(1));
+                writer.writeEmptyElement("partition");
+                writer.writeAttribute("month", partition.month());
+                writer.writeAttribute("file", partition.file());
+                writer.writeAttribute("count", String.valueOf(partition.count()));
+                writer.writeAttribute("min", Dates.format(partition.min()));
+                writer.writeAttribute("max", Dates.format(partition.max()));
+            }
+            if (!partitions.isEmpty()) writer.writeCharacters(indent(0));
+            writer.writeEndElement();
+        });
 
-                    Element amount = doc.createElement("amount");
-                    amount.appendChild(doc.createTextNode(String.valueOf(recurring.getAmount())));
+        Set<String> live = new HashSet<>();
+        for (Partition partition : partitions) {
+            live.add(partition.file());
+        }
+        File[] files = dir.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            if (!live.contains(file.getName())) file.delete();
+        }
+    }
 
-                    Element type = doc.createElement("type");
-                    type.appendChild(doc.createTextNode(recurring.getType().toString()));
+    private void writeFile(File file, XmlContent content) throws IOException {
+        Compression.write(file, out -> {
+            try {
+                writeDocument(out, content);
+            } catch (XMLStreamException ex) {
+                throw new IOException(ex);
+            }
+        });
+    }
 
-                    Element category = doc.createElement("category");
-                    category.appendChild(doc.createTextNode(recurring.getCategory()));
+    private void writeDocument(OutputStream out, XmlContent content) throws IOException, XMLStreamException {
+        CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32C());
+        XMLStreamWriter writer = outputFactory.createXMLStreamWriter(checked, "UTF-8");
+        try {
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            content.write(writer);
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+        Checksums.writeTrailer(out, checked.getChecksum().getValue());
+    }
 
-                    Element frequency = doc.createElement("frequency");
-                    frequency.appendChild(doc.createTextNode(recurring.getFrequency()));
+    private void writeProfile(XMLStreamWriter writer, User user, int depth) throws XMLStreamException {
+        writeElement(writer, depth, "username", user.getUsername());
+        writeElement(writer, depth, "password", user.getPassword());
+        writeElement(writer, depth, "currencySymbol", user.getCurrencySymbol());
+    }
 
-                    Element nextDueDate = doc.createElement("nextDueDate");
-                    nextDueDate.appendChild(doc.createTextNode(recurring.getNextDueDate()));
+    private void writeSection(XMLStreamWriter writer, User user, Section section, int depth, String applied) throws XMLStreamException {
+        if (depth > 0) writer.writeCharacters(indent(depth));
+        writer.writeStartElement(sectionElement(section));
+        if (applied != null) writer.writeAttribute("applied", applied);
+
+        boolean empty = true;
+        switch (section) {
+        case TRANSACTIONS:
+            writeTransactions(writer, user.getTransactions(), depth);
+            empty = user.getTransactions().isEmpty();
+            break;
+        case GOALS:
+            for (BudgetGoal goal : user.getGoals()) {
+                writer.writeCharacters(indent(depth + 1));
+                writer.writeStartElement("goal");
+                writeElement(writer, depth + 2, "categoryName", goal.getCategory());
+                writeElement(writer, depth + 2, "monthlyAmount", Money.format(goal.getAmount()));
+                writer.writeCharacters(indent(depth + 1));
+                writer.writeEndElement();
+            }
+            empty = user.getGoals().isEmpty();
+            break;
+        case RECURRING:
+            for (RecurringTransaction recurring : user.getRecurringTransactions()) {
+                writer.writeCharacters(indent(depth + 1));
+                writer.writeStartElement("recurring");
+                writeElement(writer, depth + 2, "description", recurring.getDescription());
+                writeElement(writer, depth + 2, "amount", Money.format(recurring.getAmount()));
+                writeElement(writer, depth + 2, "type", recurring.getType().toString());
+                writeElement(writer, depth + 2, "category", recurring.getCategory());
+                writeElement(writer, depth + 2, "frequency", recurring.getFrequency());
+                writeElement(writer, depth + 2, "nextDueDate", recurring.getNextDueDate());
+                writer.writeCharacters(indent(depth + 1));
+                writer.writeEndElement();
+            }
+            empty = user.getRecurringTransactions().isEmpty();
+            break;
+        case SAVINGS_GOALS:
+            for (SavingsGoal savingsGoal : user.getSavingsGoals()) {
+                writer.writeCharacters(indent(depth + 1));
+                writer.writeStartElement("savingsGoal");
+                writeElement(writer, depth + 2, "name", savingsGoal.getName());
+                writeElement(writer, depth + 2, "targetAmount", Money.format(savingsGoal.getTargetAmount()));
+                writeElement(writer, depth + 2, "currentAmount", Money.format(savingsGoal.getCurrentAmount()));
+                writer.writeCharacters(indent(depth + 1));
+                writer.writeEndElement();
+            }
+            empty = user.getSavingsGoals().isEmpty();
+            break;
+        default:
+            break;
+        }
 
-                    recElement.appendChild(description);
-                    recElement.appendChild(amount);
-                    recElement.appendChild(type);
-                    recElement.appendChild(category);
-                    recElement.appendChild(frequency);
-                    recElement.appendChild(nextDueDate);
+        if (!empty) writer.writeCharacters(indent(depth));
+        writer.writeEndElement();
+    }
 
-                    recurringElement.appendChild(recElement);
-                }
+    private void writeTransactions(XMLStreamWriter writer, List<Transaction> transactions, int depth) throws XMLStreamException {
+        for (Transaction transaction : transactions) {
+            writer.writeCharacters(indent(depth + 1));
+            writer.writeStartElement("transaction");
+            writer.writeAttribute("id", String.valueOf(transaction.getId()));
+            writeElement(writer, depth + 2, "date", Dates.format(transaction.getDate()));
+            writeElement(writer, depth + 2, "description", transaction.getDescription());
+            writeElement(writer, depth + 2, "amount", Money.format(transaction.getAmount()));
+            writeElement(writer, depth + 2, "type", transaction.getType().toString());
+            writeElement(writer, depth + 2, "category", transaction.getCategory());
+            writer.writeCharacters(indent(depth + 1));
+            writer.writeEndElement();
+        }
+    }
 
-                nodeUser.appendChild(recurringElement);
-            }
+    private void writeElement(XMLStreamWriter writer, int depth, String name, String text) throws XMLStreamException {
+        writer.writeCharacters(indent(depth));
+        writer.writeStartElement(name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
 
-            docToFile(doc, filename);
+    private static String indent(int depth) {
+        return "\n" + "  ".repeat(depth);
+    }
 
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+    @Override
+    public void close() {
+        userLocks.close();
+        globalLocks.close();
     }
 
+    @Override
+    @SuppressWarnings("try")
     public void saveCategories(List<String> incomeCats, List<String> expenseCats) {
         Document doc;
-        try {
-            doc = docFromFile(filename);
-
-            Node categoriesNode = doc.getDocumentElement().getElementsByTagName("categories").item(0);
-
-            if (categoriesNode != null) {
-                doc.getDocumentElement().removeChild(categoriesNode);
-            }
+        try (StripedLocks.Hold hold = globalLocks.write("categories")) {
+            doc = documentBuilderFactory.newDocumentBuilder().newDocument();
 
             Element categories = doc.createElement("categories");
 
@@ -432,60 +1278,46 @@ public class DataStore {
                 categories.appendChild(categoryNode);
             }
 
-            doc.getDocumentElement().appendChild(categories);
-            docToFile(doc, filename);
+            doc.appendChild(categories);
+            docToFile(doc, categoriesFile.getPath());
 
         } catch (Exception ex) {
             ex.printStackTrace();
         }
     }
 
+    @Override
+    @SuppressWarnings("try")
     public boolean loadCategories(List<String> incomeCats, List<String> expenseCats) {
-        Document doc;
-        try {
-            doc = docFromFile(filename);
-
-            NodeList categoryNodes = doc.getElementsByTagName("category");
-            if (categoryNodes == null || categoryNodes.getLength() == 0) {
-                return false;
-            }
-
-            List<String> loadedIncomeCats = new ArrayList<>();
-            List<String> loadedExpenseCats = new ArrayList<>();
-
-            for (int i = 0; i < categoryNodes.getLength(); i++) {
-                Element categoryNode = (Element) categoryNodes.item(i);
-                if (categoryNode.getNodeType() == Node.TEXT_NODE) continue;
-
-                Node nameNode = categoryNode.getElementsByTagName("name").item(0);
-                Node typeNode = categoryNode.getElementsByTagName("type").item(0);
-
-                if (nameNode != null && typeNode != null) {
-                    String name = nameNode.getTextContent();
-                    String type = typeNode.getTextContent();
-
-                    if ("INCOME".equals(type)) {
-                        loadedIncomeCats.add(name);
-                    } else if ("EXPENSE".equals(type)) {
-                        loadedExpenseCats.add(name);
-                    }
+        if (!categoriesFile.exists()) return false;
+
+        List<String> loadedIncomeCats = new ArrayList<>();
+        List<String> loadedExpenseCats = new ArrayList<>();
+        try (StripedLocks.Hold hold = globalLocks.read("categories"); InputStream in = Compression.open(categoriesFile)) {
+            reportIfDamaged(categoriesFile, "categories");
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                if (reader.nextTag() == XMLStreamConstants.START_ELEMENT && "categories".equals(reader.getLocalName())) {
+                    readCategories(reader, loadedIncomeCats, loadedExpenseCats);
                 }
+            } finally {
+                reader.close();
             }
-
-            if (!loadedIncomeCats.isEmpty()) {
-                incomeCats.clear();
-                incomeCats.addAll(loadedIncomeCats);
-            }
-
-            if (!loadedExpenseCats.isEmpty()) {
-                expenseCats.clear();
-                expenseCats.addAll(loadedExpenseCats);
-            }
-
-            return !loadedIncomeCats.isEmpty() || !loadedExpenseCats.isEmpty();
         } catch (Exception ex) {
             ex.printStackTrace();
             return false;
         }
+
+        if (!loadedIncomeCats.isEmpty()) {
+            incomeCats.clear();
+            incomeCats.addAll(loadedIncomeCats);
+        }
+
+        if (!loadedExpenseCats.isEmpty()) {
+            expenseCats.clear();
+            expenseCats.addAll(loadedExpenseCats);
+        }
+
+        return !loadedIncomeCats.isEmpty() || !loadedExpenseCats.isEmpty();
     }
 }
\ No newline at end of file
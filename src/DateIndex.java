@@ -0,0 +1,120 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+final class DateIndex {
+    private final boolean direct;
+    private IntBuffer dates;
+    private LongBuffer ids;
+    private int size;
+    private boolean sorted = true;
+
+    DateIndex(boolean direct) {
+        this.direct = direct;
+        allocate(16);
+    }
+
+    void insert(int date, long id) {
+        if (!sorted) {
+            append(date, id);
+            return;
+        }
+
+        reserve(size + 1);
+        int position = after(date);
+        dates.put(position + 1, dates, position, size - position);
+        ids.put(position + 1, ids, position, size - position);
+        dates.put(position, date);
+        ids.put(position, id);
+        size++;
+    }
+
+    void append(int date, long id) {
+        reserve(size + 1);
+        if (size > 0 && dates.get(size - 1) > date) sorted = false;
+        dates.put(size, date);
+        ids.put(size, id);
+        size++;
+    }
+
+    void remove(int date, long id) {
+        int position = from(date);
+        while (position < size && dates.get(position) == date && ids.get(position) != id) {
+            position++;
+        }
+        if (position == size || dates.get(position) != date) return;
+
+        dates.put(position, dates, position + 1, size - position - 1);
+        ids.put(position, ids, position + 1, size - position - 1);
+        size--;
+    }
+
+    long id(int position) {
+        return ids.get(position);
+    }
+
+    int from(int date) {
+        sort();
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dates.get(middle) < date) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    int after(int date) {
+        sort();
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dates.get(middle) <= date) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private void sort() {
+        if (sorted) return;
+
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (long) dates.get(i) << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        IntBuffer oldDates = dates;
+        LongBuffer oldIds = ids;
+        allocate(dates.capacity());
+        for (int i = 0; i < keys.length; i++) {
+            dates.put(i, oldDates.get((int) keys[i]));
+            ids.put(i, oldIds.get((int) keys[i]));
+        }
+        sorted = true;
+    }
+
+    private void reserve(int capacity) {
+        if (capacity <= dates.capacity()) return;
+
+        IntBuffer oldDates = dates;
+        LongBuffer oldIds = ids;
+        allocate(Math.max(dates.capacity() * 2, capacity));
+        dates.put(0, oldDates, 0, size);
+        ids.put(0, oldIds, 0, size);
+    }
+
+    private void allocate(int capacity) {
+        if (direct) {
+            dates = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            ids = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        } else {
+            dates = IntBuffer.allocate(capacity);
+            ids = LongBuffer.allocate(capacity);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+import java.time.LocalDate;
+
+// Transaction dates are kept as yyyymmdd ints, so comparing two dates is comparing two ints and the month is date / 100.
+final class Dates {
+    private Dates() {
+    }
+
+    static int parse(String yyyymmdd) {
+        return Integer.parseInt(yyyymmdd);
+    }
+
+    static String format(int date) {
+        return String.valueOf(date);
+    }
+
+    static int of(LocalDate date) {
+        return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    static LocalDate toLocalDate(int date) {
+        return LocalDate.of(date / 10000, date / 100 % 100, date % 100);
+    }
+
+    static int month(int date) {
+        return date / 100;
+    }
+
+    static int monthsSince(int start, int date) {
+        return (date / 10000 - start / 10000) * 12 + date / 100 % 100 - start / 100 % 100;
+    }
+}
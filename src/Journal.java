@@ -0,0 +1,90 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+class Journal {
+    private static final String HEADER = "SNAPSHOT";
+    private final Path path;
+
+    Journal(Path path) {
+        this.path = path;
+    }
+
+    long size() throws IOException {
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    void append(long snapshotId, String... fields) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // A line cut short by a crash is dropped, so the new entry starts on a line of its own.
+            long end = completeLength(channel);
+            channel.truncate(end);
+
+            StringBuilder line = new StringBuilder();
+            if (end == 0) {
+                line.append(HEADER).append('\t').append(snapshotId).append('\n');
+            }
+            line.append(TabSeparated.format(fields)).append('\n');
+
+            ByteBuffer bytes = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, end + bytes.position());
+            }
+            channel.force(false);
+        }
+    }
+
+    private long completeLength(FileChannel channel) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(4096);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - block.capacity());
+            block.clear().limit((int) (end - start));
+            while (block.hasRemaining()) {
+                if (channel.read(block, start + block.position()) < 0) throw new IOException("Journal " + path + " shrank while reading");
+            }
+            for (int i = block.limit() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') return start + i + 1;
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    List<String[]> read(long snapshotId) throws IOException {
+        List<String[]> entries = new ArrayList<>();
+        if (size() == 0) return entries;
+
+        String[] lines = Files.readString(path, StandardCharsets.UTF_8).split("\n", -1);
+        if (!lines[0].equals(HEADER + "\t" + snapshotId)) return entries;
+
+        // The last element is either empty or a line cut short by a crash; neither is replayed.
+        for (int i = 1; i < lines.length - 1; i++) {
+            entries.add(TabSeparated.parse(lines[i]));
+        }
+        return entries;
+    }
+
+    void discardUnless(long snapshotId) throws IOException {
+        if (size() == 0) return;
+
+        String header;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            header = reader.readLine();
+        }
+        if (!(HEADER + "\t" + snapshotId).equals(header)) {
+            delete();
+        }
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,87 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+final class LongIntMap {
+    private static final long EMPTY = 0;
+
+    private final boolean direct;
+    private LongBuffer keys;
+    private IntBuffer values;
+    private int size;
+
+    // Open addressing with linear probing; zero marks a free slot, so zero cannot be used as a key.
+    LongIntMap(boolean direct) {
+        this.direct = direct;
+        allocate(16);
+    }
+
+    int get(long key) {
+        int mask = keys.capacity() - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long current = keys.get(slot);
+            if (current == key) return values.get(slot);
+            if (current == EMPTY) return -1;
+        }
+    }
+
+    void put(long key, int value) {
+        if ((size + 1) * 4 > keys.capacity() * 3) rehash(keys.capacity() * 2);
+
+        int mask = keys.capacity() - 1;
+        int slot = hash(key) & mask;
+        while (keys.get(slot) != EMPTY && keys.get(slot) != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys.get(slot) == EMPTY) size++;
+        keys.put(slot, key);
+        values.put(slot, value);
+    }
+
+    void remove(long key) {
+        int mask = keys.capacity() - 1;
+        int slot = hash(key) & mask;
+        while (keys.get(slot) != key) {
+            if (keys.get(slot) == EMPTY) return;
+            slot = (slot + 1) & mask;
+        }
+
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys.get(next) != EMPTY; next = (next + 1) & mask) {
+            int home = hash(keys.get(next)) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys.put(gap, keys.get(next));
+                values.put(gap, values.get(next));
+                gap = next;
+            }
+        }
+        keys.put(gap, EMPTY);
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        LongBuffer oldKeys = keys;
+        IntBuffer oldValues = values;
+        allocate(capacity);
+        for (int slot = 0; slot < oldKeys.capacity(); slot++) {
+            if (oldKeys.get(slot) != EMPTY) put(oldKeys.get(slot), oldValues.get(slot));
+        }
+    }
+
+    private void allocate(int capacity) {
+        if (direct) {
+            keys = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+            values = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        } else {
+            keys = LongBuffer.allocate(capacity);
+            values = IntBuffer.allocate(capacity);
+        }
+        size = 0;
+    }
+
+    private static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+}
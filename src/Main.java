@@ -1,12 +1,12 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
@@ -16,21 +16,37 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 enum TransactionType {
     INCOME, EXPENSE
 }
 
+enum Section {
+    PROFILE, TRANSACTIONS, GOALS, RECURRING, SAVINGS_GOALS
+}
+
+interface SectionLoader {
+    void load(User user, Section section);
+
+    default TransactionTable loadTransactions(User user, int startDate, int endDate) {
+        return null;
+    }
+
+    default int countTransactions(User user) {
+        return -1;
+    }
+}
+
 class BudgetGoal {
     private String category;
-    private double amount;
+    private long amount;
 
-    public BudgetGoal(String category, double amount) {
+    public BudgetGoal(String category, long amount) {
         this.category = category;
         this.amount = amount;
     }
@@ -39,11 +55,11 @@ class BudgetGoal {
         return category;
     }
 
-    public double getAmount() {
+    public long getAmount() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
 
@@ -54,10 +70,10 @@ class BudgetGoal {
 
 class SavingsGoal {
     private String name;
-    private double targetAmount;
-    private double currentAmount;
+    private long targetAmount;
+    private long currentAmount;
 
-    public SavingsGoal(String name, double targetAmount, double currentAmount) {
+    public SavingsGoal(String name, long targetAmount, long currentAmount) {
         this.name = name;
         this.targetAmount = targetAmount;
         this.currentAmount = currentAmount;
@@ -67,11 +83,11 @@ class SavingsGoal {
         return name;
     }
 
-    public double getTargetAmount() {
+    public long getTargetAmount() {
         return targetAmount;
     }
 
-    public double getCurrentAmount() {
+    public long getCurrentAmount() {
         return currentAmount;
     }
 
@@ -79,90 +95,152 @@ class SavingsGoal {
         this.name = name;
     }
 
-    public void setTargetAmount(double targetAmount) {
+    public void setTargetAmount(long targetAmount) {
         this.targetAmount = targetAmount;
     }
 
-    public void setCurrentAmount(double currentAmount) {
+    public void setCurrentAmount(long currentAmount) {
         this.currentAmount = currentAmount;
     }
 
     public double getPercentComplete() {
-        return (currentAmount / targetAmount) * 100;
+        return Money.percent(currentAmount, targetAmount);
     }
 }
 
 class Transaction {
-    private String date;
+    private long id;
+    private int date;
     private String description;
-    private double amount;
-    private String category;
-    TransactionType type;
+    private long amount;
+    private int category;
+    private TransactionType type;
+    private final TransactionTable table;
+    private int row;
+    private int generation;
 
-    public Transaction(String date, String description, double amount, TransactionType type, String category) {
+    public Transaction(int date, String description, long amount, TransactionType type, String category) {
+        this(0, date, description, amount, type, category);
+    }
+
+    Transaction(long id, int date, String description, long amount, TransactionType type, String category) {
+        this.id = id;
         this.date = date;
         this.description = description;
         this.amount = amount;
         this.type = type;
-        this.category = category;
+        this.category = CategoryDictionary.of(type).intern(category);
+        this.table = null;
+        this.row = -1;
     }
 
-    public String getDate() {
-        return date;
+    Transaction(TransactionTable table, long id, int row, int generation) {
+        this.table = table;
+        this.id = id;
+        this.row = row;
+        this.generation = generation;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getDate() {
+        return table != null ? table.date(row()) : date;
     }
 
     public String getDescription() {
-        return description;
+        return table != null ? table.description(row()) : description;
     }
 
-    public double getAmount() {
-        return amount;
+    public long getAmount() {
+        return table != null ? table.amount(row()) : amount;
     }
 
     public TransactionType getType() {
-        return type;
+        return table != null ? table.type(row()) : type;
     }
 
     public String getCategory() {
-        return category;
+        return CategoryDictionary.of(getType()).name(getCategoryId());
     }
 
-    public void setDate(String date) {
-        this.date = date;
+    public int getCategoryId() {
+        return table != null ? table.category(row()) : category;
+    }
+
+    public void setDate(int date) {
+        if (table != null) table.setDate(row(), date);
+        else this.date = date;
     }
 
     public void setDescription(String description) {
-        this.description = description;
+        if (table != null) table.setDescription(row(), description);
+        else this.description = description;
     }
 
-    public void setAmount(double amount) {
-        this.amount = amount;
+    public void setAmount(long amount) {
+        if (table != null) table.setAmount(row(), amount);
+        else this.amount = amount;
     }
 
     public void setCategory(String category) {
-        this.category = category;
+        int id = CategoryDictionary.of(getType()).intern(category);
+        if (table != null) table.setCategory(row(), id);
+        else this.category = id;
+    }
+
+    void assignId(long id) {
+        if (table == null) this.id = id;
+    }
+
+    boolean belongsTo(TransactionTable table) {
+        return this.table != null && this.table == table;
+    }
+
+    private int row() {
+        if (generation != table.generation()) {
+            int slot = table.slotOf(id);
+            if (slot < 0) throw new IllegalStateException("Transaction " + id + " has been deleted.");
+            row = slot;
+            generation = table.generation();
+        }
+        if (table.isDeleted(row)) throw new IllegalStateException("Transaction " + id + " has been deleted.");
+        return row;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (table == null) return this == other;
+        return other instanceof Transaction transaction && transaction.table == table && transaction.id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return table == null ? System.identityHashCode(this) : System.identityHashCode(table) * 31 + Long.hashCode(id);
     }
 
     @Override
     public String toString() {
-        return String.format("%s | %-15s | %8.2f | %-10s | %s",
-                date,
+        String description = getDescription();
+        return String.format("%s | %-15s | %8s | %-10s | %s",
+                getDate(),
                 description.substring(0, Math.min(description.length(), 15)),
-                (type == TransactionType.EXPENSE ? -1 : 1) * amount,
-                category,
-                type);
+                Money.format((getType() == TransactionType.EXPENSE ? -1 : 1) * getAmount()),
+                getCategory(),
+                getType());
     }
 }
 
 class RecurringTransaction {
     private String description;
-    private double amount;
+    private long amount;
     private TransactionType type;
     private String category;
     private String frequency = "MONTHLY";
     private String nextDueDate;
 
-    public RecurringTransaction(String description, double amount, TransactionType type, String category, String nextDueDate) {
+    public RecurringTransaction(String description, long amount, TransactionType type, String category, String nextDueDate) {
         this.description = description;
         this.amount = amount;
         this.type = type;
@@ -174,7 +252,7 @@ class RecurringTransaction {
         return description;
     }
 
-    public double getAmount() {
+    public long getAmount() {
         return amount;
     }
 
@@ -200,10 +278,10 @@ class RecurringTransaction {
 
     @Override
     public String toString() {
-        return String.format("%s | %-15s | %8.2f | %-10s | %s",
+        return String.format("%s | %-15s | %8s | %-10s | %s",
                 nextDueDate,
                 description.substring(0, Math.min(description.length(), 15)),
-                (type == TransactionType.EXPENSE ? -1 : 1) * amount,
+                Money.format((type == TransactionType.EXPENSE ? -1 : 1) * amount),
                 category,
                 type);
     }
@@ -213,10 +291,15 @@ class User {
     private String username;
     private String password;
     private String currencySymbol = "$";
-    public List<Transaction> transactions = new ArrayList<>();
-    public List<BudgetGoal> goals = new ArrayList<>();
-    public List<RecurringTransaction> recurringTransactions = new ArrayList<>();
-    public List<SavingsGoal> savingsGoals = new ArrayList<>();
+    long snapshotId;
+    long version;
+    private final EnumSet<Section> dirty = EnumSet.allOf(Section.class);
+    private final EnumSet<Section> loaded = EnumSet.allOf(Section.class);
+    private SectionLoader loader;
+    private final TransactionTable transactions = new TransactionTable();
+    private final List<BudgetGoal> goals = new ArrayList<>();
+    private final List<RecurringTransaction> recurringTransactions = new ArrayList<>();
+    private final List<SavingsGoal> savingsGoals = new ArrayList<>();
 
     public User(String username, String password) {
         this.username = username;
@@ -233,6 +316,7 @@ class User {
 
     public void setPassword(String password) {
         this.password = password;
+        dirty.add(Section.PROFILE);
     }
 
     public String getCurrencySymbol() {
@@ -241,6 +325,109 @@ class User {
 
     public void setCurrencySymbol(String currencySymbol) {
         this.currencySymbol = currencySymbol;
+        dirty.add(Section.PROFILE);
+    }
+
+    public TransactionTable getTransactions() {
+        ensureLoaded(Section.TRANSACTIONS);
+        return transactions;
+    }
+
+    public TransactionTable getTransactionsBetween(int startDate, int endDate) {
+        if (!loaded.contains(Section.TRANSACTIONS)) {
+            TransactionTable range = loader.loadTransactions(this, startDate, endDate);
+            if (range != null) return range;
+        }
+        return getTransactions().between(startDate, endDate);
+    }
+
+    public boolean hasTransactions() {
+        if (!loaded.contains(Section.TRANSACTIONS)) {
+            int count = loader.countTransactions(this);
+            if (count >= 0) return count > 0;
+        }
+        return !getTransactions().isEmpty();
+    }
+
+    public List<BudgetGoal> getGoals() {
+        ensureLoaded(Section.GOALS);
+        return goals;
+    }
+
+    public List<RecurringTransaction> getRecurringTransactions() {
+        ensureLoaded(Section.RECURRING);
+        return recurringTransactions;
+    }
+
+    public List<SavingsGoal> getSavingsGoals() {
+        ensureLoaded(Section.SAVINGS_GOALS);
+        return savingsGoals;
+    }
+
+    void loadLazily(Set<Section> sections, SectionLoader loader) {
+        this.loader = loader;
+        loaded.removeAll(sections);
+    }
+
+    SectionLoader getLoader() {
+        return loader;
+    }
+
+    void setLoader(SectionLoader loader) {
+        this.loader = loader;
+    }
+
+    boolean isLoaded(Section section) {
+        return loaded.contains(section);
+    }
+
+    private void ensureLoaded(Section section) {
+        if (loaded.add(section)) {
+            loader.load(this, section);
+        }
+    }
+
+    void markDirty(Section... sections) {
+        dirty.addAll(Arrays.asList(sections));
+    }
+
+    void markDirty(Set<Section> sections) {
+        dirty.addAll(sections);
+    }
+
+    Set<Section> dirtySections() {
+        return EnumSet.copyOf(dirty);
+    }
+
+    void markClean(Set<Section> sections) {
+        dirty.removeAll(sections);
+    }
+
+    void share() {
+        transactions.share();
+    }
+
+    User copy() {
+        User copy = new User(username, password);
+        copy.currencySymbol = currencySymbol;
+        copy.snapshotId = snapshotId;
+        copy.version = version;
+        copy.dirty.retainAll(dirty);
+        copy.loaded.retainAll(loaded);
+        copy.loader = loader;
+
+        copy.transactions.shareFrom(transactions);
+        for (BudgetGoal goal : goals) {
+            copy.goals.add(new BudgetGoal(goal.getCategory(), goal.getAmount()));
+        }
+        for (RecurringTransaction recurring : recurringTransactions) {
+            copy.recurringTransactions.add(new RecurringTransaction(recurring.getDescription(), recurring.getAmount(),
+                    recurring.getType(), recurring.getCategory(), recurring.getNextDueDate()));
+        }
+        for (SavingsGoal savingsGoal : savingsGoals) {
+            copy.savingsGoals.add(new SavingsGoal(savingsGoal.getName(), savingsGoal.getTargetAmount(), savingsGoal.getCurrentAmount()));
+        }
+        return copy;
     }
 }
 
@@ -252,9 +439,10 @@ public class Main {
     static Scanner scanner = new Scanner(System.in);
     static boolean logged = false;
     static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
-    static final String DELIMITER = ":";
+    static final String DELIMITER = CategoryDictionary.DELIMITER;
 
-    static DataStore store = new DataStore();
+    static Storage store = Storage.open();
+    static BackupCatalog backups = new BackupCatalog(new File("data", "backups"));
     static User user = null;
 
     static List<String> incCats = new ArrayList<>(Arrays.asList("Salary", "Bonus", "Gift", "Investment", "Other"));
@@ -269,25 +457,42 @@ public class Main {
             cleanScreen();
             showUserMenu();
         }
+
+        store.close();
     }
 
-    private static String getParentCategory(String category) {
-        if (category == null || !category.contains(DELIMITER)) {
-            return category;
+    private static void outlineCategories(TransactionType type, List<String> names, List<Integer> levels) {
+        CategoryDictionary dictionary = CategoryDictionary.of(type);
+        List<String> categories = type == TransactionType.INCOME ? incCats : expCats;
+        Set<Integer> listed = new HashSet<>();
+        for (String category : categories) {
+            listed.add(dictionary.intern(category));
+        }
+
+        Set<Integer> shown = new HashSet<>();
+        for (String category : categories) {
+            int id = dictionary.find(category);
+            if (dictionary.parent(id) < 0) outlineCategory(dictionary, id, 0, listed, shown, names, levels);
+        }
+        for (String category : categories) {
+            int id = dictionary.find(category);
+            if (dictionary.parent(id) >= 0 && !listed.contains(dictionary.parent(id))) outlineCategory(dictionary, id, 0, listed, shown, names, levels);
         }
-        return category.split(DELIMITER)[0];
     }
 
-    private static String getChildCategory(String category) {
-        if (category == null || !category.contains(DELIMITER)) {
-            return "";
+    private static void outlineCategory(CategoryDictionary dictionary, int id, int level, Set<Integer> listed, Set<Integer> shown, List<String> names, List<Integer> levels) {
+        if (!shown.add(id)) return;
+
+        names.add(dictionary.name(id));
+        levels.add(level);
+        for (int child = dictionary.firstChild(id); child >= 0; child = dictionary.nextSibling(child)) {
+            if (listed.contains(child)) outlineCategory(dictionary, child, level + 1, listed, shown, names, levels);
         }
-        String[] parts = category.split(DELIMITER);
-        return parts.length > 1 ? parts[1] : "";
     }
 
-    private static boolean isSubcategory(String category) {
-        return category != null && category.contains(DELIMITER);
+    private static String outlineLabel(String category, int level) {
+        if (level == 0) return category;
+        return "  ".repeat(level - 1) + "↳ " + category.substring(category.lastIndexOf(DELIMITER) + DELIMITER.length());
     }
 
     private static void showUserMenu() {
@@ -441,7 +646,7 @@ public class Main {
     }
 
     private static boolean addNewLogin(String username, String password) {
-        if (store.getUser(username) != null) return false;
+        if (store.userExists(username)) return false;
 
         store.addUser(new User(username, password));
         return true;
@@ -464,13 +669,44 @@ public class Main {
     }
 
     private static boolean tryLogin(String username, String password) {
-        user = store.getUser(username);
-        if (user != null && user.getPassword().equals(password)) return true;
+        user = store.checkCredentials(username, password) ? store.getUser(username) : null;
+        if (user != null) return true;
 
         user = null;
         return false;
     }
 
+    private static boolean save(Runnable write) {
+        try {
+            write.run();
+            return true;
+        } catch (WriteFailedException ex) {
+            System.out.printf("%n%sAn earlier change could not be saved. Saving it again.%s%n", RED, RESET);
+            return save(() -> store.updateUser(user));
+        } catch (VersionConflictException ex) {
+            System.out.printf("%n%sThis account was changed in another session since you loaded it.%s%n", RED, RESET);
+            while (true) {
+                System.out.printf("[%sR%s] Reload the saved data (your last change is discarded)%n", GREEN, RESET);
+                System.out.printf("[%sK%s] Keep your data and overwrite the other session's changes%n", GREEN, RESET);
+                System.out.print("Choose an option: ");
+                String choice = scanner.nextLine().toLowerCase();
+
+                if ("r".equals(choice)) {
+                    user = store.getUser(user.getUsername());
+                    System.out.println("Data reloaded.");
+                    return false;
+                } else if ("k".equals(choice)) {
+                    for (Section section : Section.values()) {
+                        if (user.isLoaded(section)) user.markDirty(section);
+                    }
+                    user.version = ex.getStoredVersion();
+                    return save(() -> store.updateUser(user));
+                }
+                System.out.println("Invalid option. Please enter R or K.");
+            }
+        }
+    }
+
     private static void addTransaction() {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sAdd Transaction%s\n\n", BLUE, RED, BLUE, RESET);
@@ -508,10 +744,10 @@ public class Main {
         System.out.print("Enter description: ");
         String description = scanner.nextLine();
 
-        double amount;
+        long amount;
         while (true) {
             System.out.print("Enter amount (positive number): ");
-            Double parsedAmount = tryToParseDouble(scanner.nextLine());
+            Long parsedAmount = tryToParseAmount(scanner.nextLine());
             if (parsedAmount != null && parsedAmount > 0) {
                 amount = parsedAmount;
                 break;
@@ -522,9 +758,9 @@ public class Main {
 
         String category = promptForCategory(type);
 
-        Transaction transaction = new Transaction(date, description, amount, type, category);
-        user.transactions.add(transaction);
-        store.updateUser(user);
+        Transaction transaction = new Transaction(Dates.parse(date), description, amount, type, category);
+        user.getTransactions().add(transaction);
+        save(() -> store.addTransaction(user, transaction));
 
         System.out.println("\nTransaction added successfully!");
         pausePrompt();
@@ -540,10 +776,10 @@ public class Main {
         }
     }
 
-    private static Double tryToParseDouble(String text) {
+    private static Long tryToParseAmount(String text) {
         try {
-            return Double.parseDouble(text);
-        } catch (NumberFormatException e) {
+            return Money.parse(text);
+        } catch (NumberFormatException | ArithmeticException e) {
             return null;
         }
     }
@@ -568,7 +804,7 @@ public class Main {
         boolean viewing = true;
 
         while (viewing) {
-            List<Transaction> filtered = applyTransactionFilters(user.transactions, filterType, filterCategory, filterStartDate, filterEndDate);
+            List<Transaction> filtered = applyTransactionFilters(user.getTransactions(), filterType, filterCategory, filterStartDate, filterEndDate);
 
             sortTransactions(filtered, sortField, sortAscending);
 
@@ -606,7 +842,7 @@ public class Main {
             System.out.printf("%sBye Bye Money%s > %sView/Manage Transactions%s%s (Page %s%d%s/%s%d%s)%n%n",
                     BLUE, RED, BLUE, RESET, headerInfo.toString(), GREEN, currentPage, RESET, GREEN, totalPages, RESET);
 
-            if (user.transactions.isEmpty()) {
+            if (user.getTransactions().isEmpty()) {
                 System.out.println("No transactions found.");
                 pausePrompt();
                 return;
@@ -714,32 +950,30 @@ public class Main {
         }
     }
 
-    private static List<Transaction> applyTransactionFilters(List<Transaction> transactions, TransactionType filterType, String filterCategory, String filterStartDate, String filterEndDate) {
+    private static List<Transaction> applyTransactionFilters(TransactionTable transactions, TransactionType filterType, String filterCategory, String filterStartDate, String filterEndDate) {
         if (filterType == null && filterCategory == null && filterStartDate == null) {
-            return transactions;
+            return new ArrayList<>(transactions);
         }
 
         List<Transaction> result = new ArrayList<>();
+        int startDate = filterStartDate != null ? Dates.parse(filterStartDate) : Integer.MIN_VALUE;
+        int endDate = filterEndDate != null ? Dates.parse(filterEndDate) : Integer.MAX_VALUE;
+        boolean[] incomeCategories = CategoryDictionary.of(TransactionType.INCOME).matching(filterCategory);
+        boolean[] expenseCategories = CategoryDictionary.of(TransactionType.EXPENSE).matching(filterCategory);
 
-        for (Transaction transaction : transactions) {
-            boolean typeMatch = filterType == null || transaction.getType() == filterType;
-            boolean categoryMatch = filterCategory == null || transaction.getCategory().equalsIgnoreCase(filterCategory);
-            boolean dateMatch = true;
-
-            if (filterStartDate != null) {
-                LocalDate transactionDate = LocalDate.parse(transaction.getDate(), DATE_FORMATTER);
-                LocalDate startDate = LocalDate.parse(filterStartDate, DATE_FORMATTER);
+        int[] rows = filterStartDate != null || filterEndDate != null ? transactions.rowsBetween(startDate, endDate) : null;
+        int count = rows != null ? rows.length : transactions.size();
 
-                if (filterEndDate != null) {
-                    LocalDate endDate = LocalDate.parse(filterEndDate, DATE_FORMATTER);
-                    dateMatch = !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                } else {
-                    dateMatch = !transactionDate.isBefore(startDate);
-                }
-            }
+        for (int i = 0; i < count; i++) {
+            int row = rows != null ? rows[i] : i;
+            TransactionType type = transactions.type(row);
+            boolean typeMatch = filterType == null || type == filterType;
+            boolean[] categories = type == TransactionType.INCOME ? incomeCategories : expenseCategories;
+            int categoryId = transactions.category(row);
+            boolean categoryMatch = filterCategory == null || (categoryId >= 0 && categories[categoryId]);
 
-            if (typeMatch && categoryMatch && dateMatch) {
-                result.add(transaction);
+            if (typeMatch && categoryMatch) {
+                result.add(transactions.get(row));
             }
         }
 
@@ -776,7 +1010,7 @@ public class Main {
             }
 
             if (isValidDate(newDate)) {
-                transaction.setDate(newDate);
+                transaction.setDate(Dates.parse(newDate));
                 changed = true;
                 break;
             } else {
@@ -793,8 +1027,8 @@ public class Main {
             changed = true;
         }
 
-        double newAmount;
-        System.out.printf("%nCurrent Amount: %.2f%n", transaction.getAmount());
+        long newAmount;
+        System.out.printf("%nCurrent Amount: %s%n", Money.format(transaction.getAmount()));
         while (true) {
             System.out.print("Enter new amount (positive number, Enter to keep): ");
             String amountInput = scanner.nextLine();
@@ -803,7 +1037,7 @@ public class Main {
                 break;
             }
 
-            Double parsedAmount = tryToParseDouble(amountInput);
+            Long parsedAmount = tryToParseAmount(amountInput);
             if (parsedAmount != null && parsedAmount > 0) {
                 transaction.setAmount(parsedAmount);
                 changed = true;
@@ -826,7 +1060,7 @@ public class Main {
         }
 
         if (changed) {
-            store.updateUser(user);
+            save(() -> store.editTransaction(user, transaction));
             System.out.println("\nTransaction updated successfully!");
         } else {
             System.out.println("\nNo changes were made to the transaction.");
@@ -856,8 +1090,8 @@ public class Main {
 
         String confirm = scanner.nextLine().toLowerCase();
         if ("y".equals(confirm)) {
-            user.transactions.remove(transaction);
-            store.updateUser(user);
+            user.getTransactions().delete(transaction.getId());
+            save(() -> store.deleteTransaction(user, transaction.getId()));
             System.out.println("\nTransaction deleted successfully!");
         } else {
             System.out.println("\nDeletion cancelled.");
@@ -992,19 +1226,19 @@ public class Main {
 
         switch (sortField.toLowerCase()) {
             case "date":
-                comparator = Comparator.comparing(Transaction::getDate);
+                comparator = Comparator.comparingInt(Transaction::getDate);
                 break;
             case "description":
                 comparator = Comparator.comparing(t -> t.getDescription().toLowerCase());
                 break;
             case "amount":
-                comparator = Comparator.comparing(Transaction::getAmount);
+                comparator = Comparator.comparingLong(Transaction::getAmount);
                 break;
             case "category":
                 comparator = Comparator.comparing(t -> t.getCategory().toLowerCase());
                 break;
             default:
-                comparator = Comparator.comparing(Transaction::getDate);
+                comparator = Comparator.comparingInt(Transaction::getDate);
                 break;
         }
 
@@ -1139,10 +1373,10 @@ public class Main {
         System.out.print("Enter description: ");
         String description = scanner.nextLine();
 
-        double amount;
+        long amount;
         while (true) {
             System.out.print("Enter amount (positive number): ");
-            Double parsedAmount = tryToParseDouble(scanner.nextLine());
+            Long parsedAmount = tryToParseAmount(scanner.nextLine());
             if (parsedAmount != null && parsedAmount > 0) {
                 amount = parsedAmount;
                 break;
@@ -1169,8 +1403,9 @@ public class Main {
         }
 
         RecurringTransaction recurring = new RecurringTransaction(description, amount, type, category, nextDueDate);
-        user.recurringTransactions.add(recurring);
-        store.updateUser(user);
+        user.getRecurringTransactions().add(recurring);
+        user.markDirty(Section.RECURRING);
+        save(() -> store.updateUser(user));
 
         System.out.println("\nRecurring transaction added successfully!");
         pausePrompt();
@@ -1180,7 +1415,7 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sList Recurring Transactions%s%n%n", BLUE, RED, BLUE, RESET);
 
-        if (user.recurringTransactions.isEmpty()) {
+        if (user.getRecurringTransactions().isEmpty()) {
             System.out.println("No recurring transactions found.");
             pausePrompt();
             return;
@@ -1189,8 +1424,8 @@ public class Main {
         System.out.println("#  | Next Due  | Description     |   Amount | Category   | Type");
         System.out.println("---+-----------+-----------------+----------+------------+---------");
 
-        for (int i = 0; i < user.recurringTransactions.size(); i++) {
-            System.out.printf("%s%2d%s | %s%n", GREEN, i + 1, RESET, user.recurringTransactions.get(i));
+        for (int i = 0; i < user.getRecurringTransactions().size(); i++) {
+            System.out.printf("%s%2d%s | %s%n", GREEN, i + 1, RESET, user.getRecurringTransactions().get(i));
         }
 
         pausePrompt();
@@ -1200,7 +1435,7 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sDelete Recurring Transaction%s%n%n", BLUE, RED, BLUE, RESET);
 
-        if (user.recurringTransactions.isEmpty()) {
+        if (user.getRecurringTransactions().isEmpty()) {
             System.out.println("No recurring transactions found.");
             pausePrompt();
             return;
@@ -1209,21 +1444,21 @@ public class Main {
         System.out.println("#  | Next Due  | Description     |   Amount | Category   | Type");
         System.out.println("---+-----------+-----------------+----------+------------+---------");
 
-        for (int i = 0; i < user.recurringTransactions.size(); i++) {
-            System.out.printf("%s%2d%s | %s%n", GREEN, i + 1, RESET, user.recurringTransactions.get(i));
+        for (int i = 0; i < user.getRecurringTransactions().size(); i++) {
+            System.out.printf("%s%2d%s | %s%n", GREEN, i + 1, RESET, user.getRecurringTransactions().get(i));
         }
 
         System.out.print("\nEnter recurring transaction number to delete: ");
         String input = scanner.nextLine();
         Integer choice = tryToParse(input);
 
-        if (choice == null || choice < 1 || choice > user.recurringTransactions.size()) {
+        if (choice == null || choice < 1 || choice > user.getRecurringTransactions().size()) {
             System.out.println("Invalid transaction number.");
             pausePrompt();
             return;
         }
 
-        RecurringTransaction transaction = user.recurringTransactions.get(choice - 1);
+        RecurringTransaction transaction = user.getRecurringTransactions().get(choice - 1);
 
         System.out.printf("%nAre you sure you want to delete this recurring transaction?%n");
         System.out.println(transaction);
@@ -1231,8 +1466,9 @@ public class Main {
 
         String confirm = scanner.nextLine().toLowerCase();
         if ("y".equals(confirm)) {
-            user.recurringTransactions.remove(choice - 1);
-            store.updateUser(user);
+            user.getRecurringTransactions().remove(choice - 1);
+            user.markDirty(Section.RECURRING);
+            save(() -> store.updateUser(user));
             System.out.println("Recurring transaction deleted successfully!");
         } else {
             System.out.println("Deletion cancelled.");
@@ -1245,7 +1481,7 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sLog Due Recurring Transactions%s%n%n", BLUE, RED, BLUE, RESET);
 
-        if (user.recurringTransactions.isEmpty()) {
+        if (user.getRecurringTransactions().isEmpty()) {
             System.out.println("No recurring transactions found.");
             pausePrompt();
             return;
@@ -1255,7 +1491,8 @@ public class Main {
         boolean changesMade = false;
         int logged = 0;
 
-        for (RecurringTransaction recurring : user.recurringTransactions) {
+        for (int i = 0; i < user.getRecurringTransactions().size(); i++) {
+            RecurringTransaction recurring = user.getRecurringTransactions().get(i);
             LocalDate dueDate = LocalDate.parse(recurring.getNextDueDate(), DATE_FORMATTER);
 
             if (!dueDate.isAfter(today)) {
@@ -1270,16 +1507,19 @@ public class Main {
                     break;
                 } else if ("y".equals(choice)) {
                     Transaction transaction = new Transaction(
-                            recurring.getNextDueDate(),
+                            Dates.parse(recurring.getNextDueDate()),
                             recurring.getDescription(),
                             recurring.getAmount(),
                             recurring.getType(),
                             recurring.getCategory());
 
-                    user.transactions.add(transaction);
+                    user.getTransactions().add(transaction);
+                    if (!save(() -> store.addTransaction(user, transaction))) break;
 
                     LocalDate nextDate = dueDate.plusMonths(1);
                     recurring.setNextDueDate(nextDate.format(DATE_FORMATTER));
+                    int index = i;
+                    if (!save(() -> store.advanceRecurring(user, index))) break;
 
                     changesMade = true;
                     logged++;
@@ -1291,7 +1531,6 @@ public class Main {
         }
 
         if (changesMade) {
-            store.updateUser(user);
             System.out.printf("\nLogged %d recurring transactions.%n", logged);
         } else {
             System.out.println("\nNo transactions were logged.");
@@ -1356,7 +1595,7 @@ public class Main {
         System.out.printf("%sBye Bye Money%s > %sQuick Totals%s > %s%s%s%n%n",
                 BLUE, RED, BLUE, RESET, BLUE, periodName, RESET);
 
-        List<Transaction> filtered = applyTransactionFilters(user.transactions, null, null, startDate, endDate);
+        TransactionTable filtered = user.getTransactionsBetween(Dates.parse(startDate), Dates.parse(endDate));
 
         if (filtered.isEmpty()) {
             System.out.printf("No transactions found for period: %s to %s%n", startDate, endDate);
@@ -1364,24 +1603,16 @@ public class Main {
             return;
         }
 
-        double totalIncome = 0;
-        double totalExpenses = 0;
+        long totalIncome = filtered.total(TransactionType.INCOME);
+        long totalExpenses = filtered.total(TransactionType.EXPENSE);
 
-        for (Transaction transaction : filtered) {
-            if (transaction.getType() == TransactionType.INCOME) {
-                totalIncome += transaction.getAmount();
-            } else {
-                totalExpenses += transaction.getAmount();
-            }
-        }
-
-        double netBalance = totalIncome - totalExpenses;
+        long netBalance = totalIncome - totalExpenses;
         String netColor = netBalance >= 0 ? GREEN : RED;
 
         System.out.printf("Quick Totals (Period: %s-%s):%n%n", startDate, endDate);
-        System.out.printf("Total Income:  %s%s%10.2f%s%n", GREEN, user.getCurrencySymbol(), totalIncome, RESET);
-        System.out.printf("Total Expenses: %s%s%10.2f%s%n", RED, user.getCurrencySymbol(), totalExpenses, RESET);
-        System.out.printf("Net Balance:    %s%s%10.2f%s%n", netColor, user.getCurrencySymbol(), netBalance, RESET);
+        System.out.printf("Total Income:  %s%s%10s%s%n", GREEN, user.getCurrencySymbol(), Money.format(totalIncome), RESET);
+        System.out.printf("Total Expenses: %s%s%10s%s%n", RED, user.getCurrencySymbol(), Money.format(totalExpenses), RESET);
+        System.out.printf("Net Balance:    %s%s%10s%s%n", netColor, user.getCurrencySymbol(), Money.format(netBalance), RESET);
 
         pausePrompt();
     }
@@ -1476,69 +1707,48 @@ public class Main {
         System.out.printf("Spending Trend for Category: %s%s%s%n", GREEN, category, RESET);
         System.out.printf("Period: %s to %s (%d months)%n%n", startDateStr, endDateStr, months);
 
-        if (user.transactions.isEmpty()) {
+        if (!user.hasTransactions()) {
             System.out.println("No transactions found in the system.");
             pausePrompt();
             return;
         }
 
-        List<Transaction> expenseTransactions = new ArrayList<>();
-        for (Transaction transaction : user.transactions) {
-            if (transaction.getType() == TransactionType.EXPENSE) {
-                expenseTransactions.add(transaction);
+        TransactionTable transactions = user.getTransactionsBetween(Dates.of(startDate), Dates.of(endDate));
+        CategoryDictionary dictionary = CategoryDictionary.of(TransactionType.EXPENSE);
+        boolean[] inCategory = dictionary.within(category);
+        boolean anyExpenses = false;
+        boolean anyInCategory = false;
+        int firstMonth = Dates.of(startDate);
+        long[] monthlyTotals = new long[Dates.monthsSince(firstMonth, Dates.of(endDate)) + 1];
+
+        for (int row = 0; row < transactions.size(); row++) {
+            if (!transactions.isExpense(row)) continue;
+            anyExpenses = true;
+
+            int rowCategory = transactions.category(row);
+            if (rowCategory >= 0 && inCategory[rowCategory]) {
+                monthlyTotals[Dates.monthsSince(firstMonth, transactions.date(row))] += transactions.amount(row);
+                anyInCategory = true;
             }
         }
 
-        if (expenseTransactions.isEmpty()) {
+        if (!anyExpenses) {
             System.out.println("No expense transactions found in the system.");
             pausePrompt();
             return;
         }
 
-        List<Transaction> filtered = new ArrayList<>();
-        for (Transaction transaction : expenseTransactions) {
-            boolean categoryMatch = false;
-
-            if (transaction.getCategory().equalsIgnoreCase(category)) {
-                categoryMatch = true;
-            }
-            else if (!isSubcategory(category) && isSubcategory(transaction.getCategory()) &&
-                     getParentCategory(transaction.getCategory()).equalsIgnoreCase(category)) {
-                categoryMatch = true;
-            }
-
-            if (categoryMatch) {
-                try {
-                    LocalDate transactionDate = LocalDate.parse(transaction.getDate(), DATE_FORMATTER);
-                    if (!transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate)) {
-                        filtered.add(transaction);
-                    }
-                } catch (Exception e) {
-                }
-            }
-        }
-
-        if (filtered.isEmpty()) {
+        if (!anyInCategory) {
             System.out.printf("No expenses found for category '%s' in the selected period.%n", category);
             pausePrompt();
             return;
         }
 
-        Map<YearMonth, Double> monthlyTotals = new HashMap<>();
-
-        for (Transaction transaction : filtered) {
-            LocalDate date = LocalDate.parse(transaction.getDate(), DATE_FORMATTER);
-            YearMonth yearMonth = YearMonth.from(date);
-
-            double currentAmount = monthlyTotals.getOrDefault(yearMonth, 0.0);
-            monthlyTotals.put(yearMonth, currentAmount + transaction.getAmount());
-        }
-
         YearMonth current = YearMonth.from(startDate);
         YearMonth end = YearMonth.from(endDate);
 
-        double maxAmount = 0.0;
-        for (Double amount : monthlyTotals.values()) {
+        long maxAmount = 0;
+        for (long amount : monthlyTotals) {
             if (amount > maxAmount) {
                 maxAmount = amount;
             }
@@ -1547,14 +1757,14 @@ public class Main {
         System.out.println("Month      | Amount     | Trend");
         System.out.println("-----------+------------+--------------------");
 
-        while (!current.isAfter(end)) {
-            double amount = monthlyTotals.getOrDefault(current, 0.0);
-            int barLength = maxAmount > 0 ? (int)((amount / maxAmount) * 20) : 0;
+        for (int month = 0; !current.isAfter(end); month++) {
+            long amount = monthlyTotals[month];
+            int barLength = maxAmount > 0 ? (int)(amount * 20 / maxAmount) : 0;
             String bar = "█".repeat(barLength);
 
-            System.out.printf("%s-%02d | %s%9.2f | %s%s%s%n",
+            System.out.printf("%s-%02d | %s%9s | %s%s%s%n",
                     current.getYear(), current.getMonthValue(),
-                    user.getCurrencySymbol(), amount,
+                    user.getCurrencySymbol(), Money.format(amount),
                     RED, bar, RESET);
 
             current = current.plusMonths(1);
@@ -1643,40 +1853,24 @@ public class Main {
         System.out.printf("Comparing Current %s (%s) with Previous %s (%s)%n%n",
                 periodType, currentPeriod, periodType, prevPeriod);
 
-        List<Transaction> currentTransactions = applyTransactionFilters(user.transactions, null, null, currentStartStr, currentEndStr);
-        List<Transaction> prevTransactions = applyTransactionFilters(user.transactions, null, null, prevStartStr, prevEndStr);
+        TransactionTable currentTransactions = user.getTransactionsBetween(Dates.parse(currentStartStr), Dates.parse(currentEndStr));
+        TransactionTable prevTransactions = user.getTransactionsBetween(Dates.parse(prevStartStr), Dates.parse(prevEndStr));
 
-        double currentIncome = 0;
-        double currentExpenses = 0;
-        double prevIncome = 0;
-        double prevExpenses = 0;
+        long currentIncome = currentTransactions.total(TransactionType.INCOME);
+        long currentExpenses = currentTransactions.total(TransactionType.EXPENSE);
+        long prevIncome = prevTransactions.total(TransactionType.INCOME);
+        long prevExpenses = prevTransactions.total(TransactionType.EXPENSE);
 
-        for (Transaction transaction : currentTransactions) {
-            if (transaction.getType() == TransactionType.INCOME) {
-                currentIncome += transaction.getAmount();
-            } else {
-                currentExpenses += transaction.getAmount();
-            }
-        }
+        long currentNet = currentIncome - currentExpenses;
+        long prevNet = prevIncome - prevExpenses;
 
-        for (Transaction transaction : prevTransactions) {
-            if (transaction.getType() == TransactionType.INCOME) {
-                prevIncome += transaction.getAmount();
-            } else {
-                prevExpenses += transaction.getAmount();
-            }
-        }
-
-        double currentNet = currentIncome - currentExpenses;
-        double prevNet = prevIncome - prevExpenses;
-
-        double incomeChange = currentIncome - prevIncome;
-        double expensesChange = currentExpenses - prevExpenses;
-        double netChange = currentNet - prevNet;
+        long incomeChange = currentIncome - prevIncome;
+        long expensesChange = currentExpenses - prevExpenses;
+        long netChange = currentNet - prevNet;
 
-        double incomeChangePct = prevIncome > 0 ? (incomeChange / prevIncome) * 100 : 0;
-        double expensesChangePct = prevExpenses > 0 ? (expensesChange / prevExpenses) * 100 : 0;
-        double netChangePct = prevNet != 0 ? (netChange / Math.abs(prevNet)) * 100 : 0;
+        double incomeChangePct = prevIncome > 0 ? Money.percent(incomeChange, prevIncome) : 0;
+        double expensesChangePct = prevExpenses > 0 ? Money.percent(expensesChange, prevExpenses) : 0;
+        double netChangePct = Money.percent(netChange, Math.abs(prevNet));
 
         String incomeColor = incomeChange >= 0 ? GREEN : RED;
         String expensesColor = expensesChange <= 0 ? GREEN : RED;
@@ -1685,14 +1879,14 @@ public class Main {
         System.out.println("Item       | Current Period | Previous Period | Change        | Change %");
         System.out.println("-----------+----------------+-----------------+---------------+----------");
 
-        System.out.printf("Income     | %s%13.2f | %s%13.2f | %s%s%11.2f%s | %s%+7.2f%%%s%n",
-                user.getCurrencySymbol(), currentIncome, user.getCurrencySymbol(), prevIncome, incomeColor, user.getCurrencySymbol(), incomeChange, RESET, incomeColor, incomeChangePct, RESET);
+        System.out.printf("Income     | %s%13s | %s%13s | %s%s%11s%s | %s%+7.2f%%%s%n",
+                user.getCurrencySymbol(), Money.format(currentIncome), user.getCurrencySymbol(), Money.format(prevIncome), incomeColor, user.getCurrencySymbol(), Money.format(incomeChange), RESET, incomeColor, incomeChangePct, RESET);
 
-        System.out.printf("Expenses   | %s%13.2f | %s%13.2f | %s%s%11.2f%s | %s%+7.2f%%%s%n",
-                user.getCurrencySymbol(), currentExpenses, user.getCurrencySymbol(), prevExpenses, expensesColor, user.getCurrencySymbol(), expensesChange, RESET, expensesColor, expensesChangePct, RESET);
+        System.out.printf("Expenses   | %s%13s | %s%13s | %s%s%11s%s | %s%+7.2f%%%s%n",
+                user.getCurrencySymbol(), Money.format(currentExpenses), user.getCurrencySymbol(), Money.format(prevExpenses), expensesColor, user.getCurrencySymbol(), Money.format(expensesChange), RESET, expensesColor, expensesChangePct, RESET);
 
-        System.out.printf("Net Balance| %s%13.2f | %s%13.2f | %s%s%11.2f%s | %s%+7.2f%%%s%n",
-                user.getCurrencySymbol(), currentNet, user.getCurrencySymbol(), prevNet, netColor, user.getCurrencySymbol(), netChange, RESET, netColor, netChangePct, RESET);
+        System.out.printf("Net Balance| %s%13s | %s%13s | %s%s%11s%s | %s%+7.2f%%%s%n",
+                user.getCurrencySymbol(), Money.format(currentNet), user.getCurrencySymbol(), Money.format(prevNet), netColor, user.getCurrencySymbol(), Money.format(netChange), RESET, netColor, netChangePct, RESET);
 
         if (currentTransactions.isEmpty() && prevTransactions.isEmpty()) {
             System.out.println("\nNo transactions found in either period.");
@@ -1705,58 +1899,14 @@ public class Main {
         pausePrompt();
     }
 
-    private static String[] getCategoriesForType(TransactionType type) {
-        List<String> cats = type == TransactionType.INCOME ? incCats : expCats;
-        return cats.toArray(new String[0]);
-    }
-
     private static String promptForCategory(TransactionType type) {
-        String[] categories = getCategoriesForType(type);
-
-        Map<String, List<String>> bigParent = new HashMap<>();
-        List<String> pCategories = new ArrayList<>();
-        List<String> orphans = new ArrayList<>();
-
-        for (String category : categories) {
-            if (isSubcategory(category)) {
-                String parent = getParentCategory(category);
-                boolean parentExists = false;
-                for (String cat : categories) {
-                    if (!isSubcategory(cat) && cat.equals(parent)) {
-                        parentExists = true;
-                        break;
-                    }
-                }
-
-                if (parentExists) {
-                    bigParent.computeIfAbsent(parent, k -> new ArrayList<>()).add(category);
-                } else {
-                    orphans.add(category);
-                }
-            } else {
-                pCategories.add(category);
-            }
-        }
-
         List<String> displayCategories = new ArrayList<>();
-        for (String parent : pCategories) {
-            displayCategories.add(parent);
-            List<String> subs = bigParent.get(parent);
-            if (subs != null) {
-                displayCategories.addAll(subs);
-            }
-        }
-        displayCategories.addAll(orphans);
+        List<Integer> levels = new ArrayList<>();
+        outlineCategories(type, displayCategories, levels);
 
         System.out.println("\nSelect a category:");
         for (int i = 0; i < displayCategories.size(); i++) {
-            String category = displayCategories.get(i);
-            if (isSubcategory(category) && bigParent.containsKey(getParentCategory(category))) {
-                String childName = getChildCategory(category);
-                System.out.printf("%s%d%s. ↳ %s%n", GREEN, i + 1, RESET, childName);
-            } else {
-                System.out.printf("%s%d%s. %s%n", GREEN, i + 1, RESET, category);
-            }
+            System.out.printf("%s%d%s. %s%n", GREEN, i + 1, RESET, outlineLabel(displayCategories.get(i), levels.get(i)));
         }
         System.out.printf("[%sA%s] Add New Category%n", GREEN, RESET);
 
@@ -1850,51 +2000,17 @@ public class Main {
     private static void showAllCategories() {
         System.out.println("Available Categories:\n");
 
-        Map<String, List<String>> bigParent = new HashMap<>();
-        for (String category : incCats) {
-            if (isSubcategory(category)) {
-                String parent = getParentCategory(category);
-                bigParent.computeIfAbsent(parent, k -> new ArrayList<>()).add(category);
-            }
-        }
-
-        for (String category : incCats) {
-            if (!isSubcategory(category)) {
-                System.out.printf("  %s (INCOME)%n", category);
+        for (TransactionType type : new TransactionType[] { TransactionType.INCOME, TransactionType.EXPENSE }) {
+            List<String> categories = new ArrayList<>();
+            List<Integer> levels = new ArrayList<>();
+            outlineCategories(type, categories, levels);
 
-                List<String> subs = bigParent.get(category);
-                if (subs != null) {
-                    for (String sub : subs) {
-                        String childName = getChildCategory(sub);
-                        System.out.printf("    ↳ %s%n", childName);
-                    }
-                }
-            } else if (!bigParent.containsKey(getParentCategory(category))) {
-                System.out.printf("  %s (INCOME)%n", category);
-            }
-        }
-
-        Map<String, List<String>> eParent = new HashMap<>();
-        for (String category : expCats) {
-            if (isSubcategory(category)) {
-                String parent = getParentCategory(category);
-                eParent.computeIfAbsent(parent, k -> new ArrayList<>()).add(category);
-            }
-        }
-
-        for (String category : expCats) {
-            if (!isSubcategory(category)) {
-                System.out.printf("  %s (EXPENSE)%n", category);
-
-                List<String> subs = eParent.get(category);
-                if (subs != null) {
-                    for (String sub : subs) {
-                        String childName = getChildCategory(sub);
-                        System.out.printf("    ↳ %s%n", childName);
-                    }
+            for (int i = 0; i < categories.size(); i++) {
+                if (levels.get(i) == 0) {
+                    System.out.printf("  %s (%s)%n", categories.get(i), type);
+                } else {
+                    System.out.printf("    %s%n", outlineLabel(categories.get(i), levels.get(i)));
                 }
-            } else if (!eParent.containsKey(getParentCategory(category))) {
-                System.out.printf("  %s (EXPENSE)%n", category);
             }
         }
     }
@@ -1989,20 +2105,14 @@ public class Main {
     }
 
     private static boolean isCategoryInUse(String category, TransactionType type) {
-        for (Transaction transaction : user.transactions) {
-            if (transaction.getType() == type &&
-                category.equalsIgnoreCase(transaction.getCategory())) {
-                return true;
-            }
-        }
+        CategoryDictionary dictionary = CategoryDictionary.of(type);
+        boolean[] inCategory = dictionary.within(category);
 
-        if (!isSubcategory(category)) {
-            for (Transaction transaction : user.transactions) {
-                if (transaction.getType() == type &&
-                    isSubcategory(transaction.getCategory()) &&
-                    category.equalsIgnoreCase(getParentCategory(transaction.getCategory()))) {
-                    return true;
-                }
+        TransactionTable transactions = user.getTransactions();
+        for (int row = 0; row < transactions.size(); row++) {
+            int categoryId = transactions.category(row);
+            if (transactions.type(row) == type && categoryId >= 0 && inCategory[categoryId]) {
+                return true;
             }
         }
 
@@ -2010,7 +2120,7 @@ public class Main {
     }
 
     private static void updateFromTransactions() {
-        for (Transaction transaction : user.transactions) {
+        for (Transaction transaction : user.getTransactions()) {
             String category = transaction.getCategory();
             if (category != null && !category.isEmpty()) {
                 addCustomCategory(transaction.getType(), category);
@@ -2022,7 +2132,7 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sExport Transactions%s%n%n", BLUE, RED, BLUE, RESET);
 
-        if (user == null || user.transactions.isEmpty()) {
+        if (user == null || user.getTransactions().isEmpty()) {
             System.out.println("No transactions to export.");
             pausePrompt();
             return;
@@ -2044,10 +2154,10 @@ public class Main {
             writer.write("Date,Description,Amount,Type,Category\n");
 
             int count = 0;
-            for (Transaction transaction : user.transactions) {
-                String date = transaction.getDate();
+            for (Transaction transaction : user.getTransactions()) {
+                String date = Dates.format(transaction.getDate());
                 String description = formatCsvField(transaction.getDescription());
-                String amount = String.valueOf(transaction.getAmount());
+                String amount = Money.format(transaction.getAmount());
                 String type = transaction.getType().toString();
                 String category = formatCsvField(transaction.getCategory());
 
@@ -2143,7 +2253,7 @@ public class Main {
                     continue;
                 }
 
-                Double amount = tryToParseDouble(amountStr);
+                Long amount = tryToParseAmount(amountStr);
                 if (amount == null || amount <= 0) {
                     System.out.printf("Skipped line %d: Invalid amount.%n", lineNum);
                     skipped++;
@@ -2171,7 +2281,7 @@ public class Main {
                     catsChanged = true;
                 }
 
-                Transaction transaction = new Transaction(date, desc, amount,  type, category);
+                Transaction transaction = new Transaction(Dates.parse(date), desc, amount,  type, category);
                 imports.add(transaction);
             }
 
@@ -2182,16 +2292,17 @@ public class Main {
             }
 
             if (replace) {
-                user.transactions.clear();
-                user.transactions.addAll(imports);
+                user.getTransactions().clear();
+                user.getTransactions().addAll(imports);
                 System.out.printf("\nImport successful. Replaced existing data with %d imported transactions. Skipped %d lines due to errors.\n",
                         imports.size(), skipped);
             } else {
-                user.transactions.addAll(imports);
+                user.getTransactions().addAll(imports);
                 System.out.printf("\nImport successful. Added %d transactions to existing data. Skipped %d lines due to errors.\n",
                         imports.size(), skipped);
             }
-            store.updateUser(user);
+            user.markDirty(Section.TRANSACTIONS);
+            save(() -> store.updateUser(user));
 
             if (catsChanged && categoriesSavedBefore) {
                 store.saveCategories(incCats, expCats);
@@ -2281,21 +2392,47 @@ public class Main {
             return;
         }
 
-        categories.set(choice - 1, newName);
-
+        TransactionTable transactions = user.getTransactions();
+        CategoryDictionary dictionary = CategoryDictionary.of(type);
+        int categoryId = dictionary.find(oldName);
         int transactionCount = 0;
         int goalCount = 0;
 
-        for (Transaction transaction : user.transactions) {
-            if (transaction.getType() == type && oldName.equals(transaction.getCategory())) {
-                transaction.setCategory(newName);
+        for (int row = 0; row < transactions.size(); row++) {
+            if (transactions.type(row) == type && dictionary.isWithin(transactions.category(row), categoryId)) {
                 transactionCount++;
             }
         }
 
-        for (BudgetGoal goal : user.goals) {
+        if (!dictionary.rename(oldName, newName)) {
+            System.out.printf("Category '%s' already exists. Please choose a different name.\n", newName);
+            pausePrompt();
+            return;
+        }
+
+        String oldPrefix = oldName + DELIMITER;
+        for (int i = 0; i < categories.size(); i++) {
+            String category = categories.get(i);
+            if (i == choice - 1) {
+                categories.set(i, newName);
+            } else if (category.startsWith(oldPrefix)) {
+                categories.set(i, newName + DELIMITER + category.substring(oldPrefix.length()));
+            }
+        }
+
+        // Stored transactions carry the category name rather than the id, so any that use it are written out again.
+        if (transactionCount > 0) {
+            user.markDirty(Section.TRANSACTIONS);
+        }
+
+        for (BudgetGoal goal : user.getGoals()) {
             if (oldName.equals(goal.getCategory())) {
                 goal.setCategory(newName);
+                user.markDirty(Section.GOALS);
+                goalCount++;
+            } else if (goal.getCategory().startsWith(oldPrefix)) {
+                goal.setCategory(newName + DELIMITER + goal.getCategory().substring(oldPrefix.length()));
+                user.markDirty(Section.GOALS);
                 goalCount++;
             }
         }
@@ -2305,7 +2442,7 @@ public class Main {
         }
 
         if (transactionCount > 0 || goalCount > 0) {
-            store.updateUser(user);
+            save(() -> store.updateUser(user));
         }
 
         System.out.printf("\nCategory '%s' renamed to '%s'.\n", oldName, newName);
@@ -2357,16 +2494,16 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sManage Goals%s > %sList Goals%s\n\n", BLUE, RED, BLUE, RESET, BLUE, RESET);
 
-        if (user.goals.isEmpty()) {
+        if (user.getGoals().isEmpty()) {
             System.out.println("No budget goals set.");
             pausePrompt();
             return;
         }
 
         System.out.println("Current Budget Goals:\n");
-        for (int i = 0; i < user.goals.size(); i++) {
-            BudgetGoal goal = user.goals.get(i);
-            System.out.printf("%s%d%s. %s - Goal: %s%.2f%n", GREEN, i + 1, RESET, goal.getCategory(), user.getCurrencySymbol(), goal.getAmount());
+        for (int i = 0; i < user.getGoals().size(); i++) {
+            BudgetGoal goal = user.getGoals().get(i);
+            System.out.printf("%s%d%s. %s - Goal: %s%s%n", GREEN, i + 1, RESET, goal.getCategory(), user.getCurrencySymbol(), Money.format(goal.getAmount()));
         }
 
         pausePrompt();
@@ -2399,10 +2536,10 @@ public class Main {
 
         String category = expCats.get(choice - 1);
 
-        double amount;
+        long amount;
         while (true) {
             System.out.print("Enter monthly budget amount (positive number): ");
-            Double parsedAmount = tryToParseDouble(scanner.nextLine());
+            Long parsedAmount = tryToParseAmount(scanner.nextLine());
             if (parsedAmount != null && parsedAmount > 0) {
                 amount = parsedAmount;
                 break;
@@ -2412,7 +2549,7 @@ public class Main {
         }
 
         BudgetGoal existingGoal = null;
-        for (BudgetGoal goal : user.goals) {
+        for (BudgetGoal goal : user.getGoals()) {
             if (goal.getCategory().equals(category)) {
                 existingGoal = goal;
                 break;
@@ -2421,13 +2558,16 @@ public class Main {
 
         if (existingGoal != null) {
             existingGoal.setAmount(amount);
-            System.out.printf("Budget goal for '%s' updated to %s%.2f%n", category, user.getCurrencySymbol(), amount);
+            BudgetGoal updated = existingGoal;
+            save(() -> store.setGoal(user, updated));
+            System.out.printf("Budget goal for '%s' updated to %s%s%n", category, user.getCurrencySymbol(), Money.format(amount));
         } else {
-            user.goals.add(new BudgetGoal(category, amount));
-            System.out.printf("Budget goal for '%s' set to %s%.2f%n", category, user.getCurrencySymbol(), amount);
+            BudgetGoal goal = new BudgetGoal(category, amount);
+            user.getGoals().add(goal);
+            save(() -> store.setGoal(user, goal));
+            System.out.printf("Budget goal for '%s' set to %s%s%n", category, user.getCurrencySymbol(), Money.format(amount));
         }
 
-        store.updateUser(user);
         pausePrompt();
     }
 
@@ -2435,25 +2575,25 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sManage Goals%s > %sDelete Goal%s\n\n", BLUE, RED, BLUE, RESET, BLUE, RESET);
 
-        if (user.goals.isEmpty()) {
+        if (user.getGoals().isEmpty()) {
             System.out.println("No budget goals to delete.");
             pausePrompt();
             return;
         }
 
         System.out.println("Select a goal to delete:\n");
-        for (int i = 0; i < user.goals.size(); i++) {
-            BudgetGoal goal = user.goals.get(i);
-            System.out.printf("%s%d%s. %s - Goal: %s%.2f%n", GREEN, i + 1, RESET, goal.getCategory(), user.getCurrencySymbol(), goal.getAmount());
+        for (int i = 0; i < user.getGoals().size(); i++) {
+            BudgetGoal goal = user.getGoals().get(i);
+            System.out.printf("%s%d%s. %s - Goal: %s%s%n", GREEN, i + 1, RESET, goal.getCategory(), user.getCurrencySymbol(), Money.format(goal.getAmount()));
         }
 
         System.out.print("\nEnter goal number: ");
         String input = scanner.nextLine();
         Integer choice = tryToParse(input);
 
-        if (choice != null && choice >= 1 && choice <= user.goals.size()) {
-            BudgetGoal removed = user.goals.remove(choice - 1);
-            store.updateUser(user);
+        if (choice != null && choice >= 1 && choice <= user.getGoals().size()) {
+            BudgetGoal removed = user.getGoals().remove(choice - 1);
+            save(() -> store.deleteGoal(user, removed.getCategory()));
             System.out.printf("Budget goal for '%s' deleted successfully!\n", removed.getCategory());
         } else {
             System.out.println("Invalid choice.");
@@ -2470,13 +2610,13 @@ public class Main {
         String input = scanner.nextLine();
         Integer choice = tryToParse(input);
 
-        if (choice == null || choice < 1 || choice > user.transactions.size()) {
+        if (choice == null || choice < 1 || choice > user.getTransactions().size()) {
             System.out.println("Invalid transaction number.");
             pausePrompt();
             return;
         }
 
-        Transaction transaction = user.transactions.get(choice - 1);
+        Transaction transaction = user.getTransactions().get(choice - 1);
         boolean changed = false;
 
         System.out.printf("\nEditing Transaction #%d:%n", choice);
@@ -2493,7 +2633,7 @@ public class Main {
             }
 
             if (isValidDate(newDate)) {
-                transaction.setDate(newDate);
+                transaction.setDate(Dates.parse(newDate));
                 changed = true;
                 break;
             } else {
@@ -2510,8 +2650,8 @@ public class Main {
             changed = true;
         }
 
-        double newAmount;
-        System.out.printf("%nCurrent Amount: %.2f%n", transaction.getAmount());
+        long newAmount;
+        System.out.printf("%nCurrent Amount: %s%n", Money.format(transaction.getAmount()));
         while (true) {
             System.out.print("Enter new amount (positive number, Enter to keep): ");
             String amountInput = scanner.nextLine();
@@ -2520,7 +2660,7 @@ public class Main {
                 break;
             }
 
-            Double parsedAmount = tryToParseDouble(amountInput);
+            Long parsedAmount = tryToParseAmount(amountInput);
             if (parsedAmount != null && parsedAmount > 0) {
                 transaction.setAmount(parsedAmount);
                 changed = true;
@@ -2543,7 +2683,7 @@ public class Main {
         }
 
         if (changed) {
-            store.updateUser(user);
+            save(() -> store.editTransaction(user, transaction));
             System.out.println("\nTransaction updated successfully!");
         } else {
             System.out.println("\nNo changes were made to the transaction.");
@@ -2560,13 +2700,13 @@ public class Main {
         String input = scanner.nextLine();
         Integer choice = tryToParse(input);
 
-        if (choice == null || choice < 1 || choice > user.transactions.size()) {
+        if (choice == null || choice < 1 || choice > user.getTransactions().size()) {
             System.out.println("Invalid transaction number.");
             pausePrompt();
             return;
         }
 
-        Transaction transaction = user.transactions.get(choice - 1);
+        Transaction transaction = user.getTransactions().get(choice - 1);
 
         System.out.printf("%nAre you sure you want to delete this transaction?%n");
         System.out.println(transaction);
@@ -2574,8 +2714,8 @@ public class Main {
 
         String confirm = scanner.nextLine().toLowerCase();
         if ("y".equals(confirm)) {
-            user.transactions.remove(choice - 1);
-            store.updateUser(user);
+            user.getTransactions().delete(transaction.getId());
+            save(() -> store.deleteTransaction(user, transaction.getId()));
             System.out.println("Transaction deleted successfully!");
         } else {
             System.out.println("Deletion cancelled.");
@@ -2585,19 +2725,20 @@ public class Main {
     }
 
     private static BudgetGoal findGoalForCategory(String category) {
-        if (user == null || user.goals.isEmpty()) {
+        if (user == null || user.getGoals().isEmpty()) {
             return null;
         }
 
-        for (BudgetGoal goal : user.goals) {
+        for (BudgetGoal goal : user.getGoals()) {
             if (goal.getCategory().equals(category)) {
                 return goal;
             }
         }
 
-        if (isSubcategory(category)) {
-            String parentCategory = getParentCategory(category);
-            for (BudgetGoal goal : user.goals) {
+        CategoryDictionary dictionary = CategoryDictionary.of(TransactionType.EXPENSE);
+        for (int parent = dictionary.parent(dictionary.find(category)); parent >= 0; parent = dictionary.parent(parent)) {
+            String parentCategory = dictionary.name(parent);
+            for (BudgetGoal goal : user.getGoals()) {
                 if (goal.getCategory().equals(parentCategory)) {
                     return goal;
                 }
@@ -2611,7 +2752,7 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sSummary Report%s\n\n", BLUE, RED, BLUE, RESET);
 
-        if (user == null || user.transactions.isEmpty()) {
+        if (user == null || !user.hasTransactions()) {
             System.out.println("No transactions found.");
             pausePrompt();
             return;
@@ -2665,13 +2806,7 @@ public class Main {
             return;
         }
 
-        List<Transaction> filteredTransactions = new ArrayList<>();
-        for (Transaction transaction : user.transactions) {
-            LocalDate transactionDate = LocalDate.parse(transaction.getDate(), DATE_FORMATTER);
-            if (!transactionDate.isBefore(startLocalDate) && !transactionDate.isAfter(endLocalDate)) {
-                filteredTransactions.add(transaction);
-            }
-        }
+        TransactionTable filteredTransactions = user.getTransactionsBetween(Dates.parse(startDate), Dates.parse(endDate));
 
         if (filteredTransactions.isEmpty()) {
             System.out.printf("No transactions found between %s and %s.\n", startDate, endDate);
@@ -2679,106 +2814,91 @@ public class Main {
             return;
         }
 
-        double totalIncome = 0;
-        double totalExpenses = 0;
-        Map<String, Double> expensesByCategory = new HashMap<>();
-
-        for (Transaction transaction : filteredTransactions) {
-            if (transaction.getType() == TransactionType.INCOME) {
-                totalIncome += transaction.getAmount();
+        CategoryDictionary dictionary = CategoryDictionary.of(TransactionType.EXPENSE);
+        long totalIncome = filteredTransactions.total(TransactionType.INCOME);
+        long totalExpenses = filteredTransactions.total(TransactionType.EXPENSE);
+        // Totals are indexed by category id, with uncategorized expenses in the last slot.
+        int uncategorized = dictionary.size();
+        long[] categoryTotals = new long[uncategorized + 1];
+        long[] subCategoryTotals = new long[uncategorized + 1];
+        boolean[] hasCategory = new boolean[uncategorized + 1];
+        boolean[] hasSubCategory = new boolean[uncategorized + 1];
+
+        for (int row = 0; row < filteredTransactions.size(); row++) {
+            if (!filteredTransactions.isExpense(row)) continue;
+
+            int categoryId = filteredTransactions.category(row);
+            int rootId = dictionary.root(categoryId);
+            long amount = filteredTransactions.amount(row);
+
+            if (aggregateByParent && rootId != categoryId) {
+                categoryTotals[rootId] += amount;
+                hasCategory[rootId] = true;
+                subCategoryTotals[categoryId] += amount;
+                hasSubCategory[categoryId] = true;
             } else {
-                totalExpenses += transaction.getAmount();
-
-                String category = transaction.getCategory();
-
-                if (aggregateByParent && isSubcategory(category)) {
-                    String parentCategory = getParentCategory(category);
-                    expensesByCategory.put(parentCategory,
-                        expensesByCategory.getOrDefault(parentCategory, 0.0) + transaction.getAmount());
-                } else {
-                    expensesByCategory.put(category,
-                        expensesByCategory.getOrDefault(category, 0.0) + transaction.getAmount());
-                }
+                int slot = categoryId >= 0 ? categoryId : uncategorized;
+                categoryTotals[slot] += amount;
+                hasCategory[slot] = true;
             }
         }
 
-        double netBalance = totalIncome - totalExpenses;
+        List<Integer> sortedExpenses = new ArrayList<>();
+        for (int slot = 0; slot <= uncategorized; slot++) {
+            if (hasCategory[slot]) sortedExpenses.add(slot);
+        }
+        sortedExpenses.sort((s1, s2) -> Long.compare(categoryTotals[s2], categoryTotals[s1]));
+
+        long netBalance = totalIncome - totalExpenses;
 
         System.out.println("==================================================");
         System.out.printf("Report Period: %s to %s\n\n", startDate, endDate);
 
-        System.out.printf("%sTotal Income:   %s%10.2f%s\n", GREEN, user.getCurrencySymbol(), totalIncome, RESET);
-        System.out.printf("%sTotal Expenses: %s%10.2f%s\n", RED, user.getCurrencySymbol(), totalExpenses, RESET);
+        System.out.printf("%sTotal Income:   %s%10s%s\n", GREEN, user.getCurrencySymbol(), Money.format(totalIncome), RESET);
+        System.out.printf("%sTotal Expenses: %s%10s%s\n", RED, user.getCurrencySymbol(), Money.format(totalExpenses), RESET);
         System.out.println("--------------------------------------------------");
 
         String balanceColor = netBalance >= 0 ? GREEN : RED;
-        System.out.printf("%sNet Balance:    %s%10.2f%s\n\n", balanceColor, user.getCurrencySymbol(), netBalance, RESET);
+        System.out.printf("%sNet Balance:    %s%10s%s\n\n", balanceColor, user.getCurrencySymbol(), Money.format(netBalance), RESET);
 
-        if (!expensesByCategory.isEmpty()) {
+        if (!sortedExpenses.isEmpty()) {
             String reportTitle = aggregateByParent ? "Expenses by Category (Aggregated by Parent)" : "Expenses by Category";
             System.out.println(reportTitle);
             System.out.println("--------------------------------------------------");
 
-            List<Map.Entry<String, Double>> sortedExpenses = new ArrayList<>(expensesByCategory.entrySet());
-            sortedExpenses.sort((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()));
-
-            Map<String, List<String>> parentToSubs = new HashMap<>();
-            if (aggregateByParent) {
-                for (Transaction transaction : filteredTransactions) {
-                    if (transaction.getType() == TransactionType.EXPENSE && isSubcategory(transaction.getCategory())) {
-                        String parent = getParentCategory(transaction.getCategory());
-                        String fullCategory = transaction.getCategory();
-                        if (!parentToSubs.computeIfAbsent(parent, k -> new ArrayList<>()).contains(fullCategory)) {
-                            parentToSubs.computeIfAbsent(parent, k -> new ArrayList<>()).add(fullCategory);
-                        }
-                    }
-                }
-            }
-
-            for (Map.Entry<String, Double> entry : sortedExpenses) {
-                String category = entry.getKey();
-                double spent = entry.getValue();
-                double percentage = (spent / totalExpenses) * 100;
+            for (int slot : sortedExpenses) {
+                int categoryId = slot < uncategorized ? slot : -1;
+                String category = dictionary.name(categoryId);
+                long spent = categoryTotals[slot];
+                double percentage = Money.percent(spent, totalExpenses);
 
                 BudgetGoal goal = findGoalForCategory(category);
                 if (goal != null) {
-                    double goalAmount = goal.getAmount();
-                    double progressPercentage = (spent / goalAmount) * 100;
+                    long goalAmount = goal.getAmount();
+                    double progressPercentage = Money.percent(spent, goalAmount);
                     String progressColor = progressPercentage <= 100 ? GREEN : RED;
 
-                    System.out.printf("%-15s: %s%10.2f (%5.1f%%) - Goal: %s%.2f %s(%5.1f%%)%s\n",
-                            category, user.getCurrencySymbol(), spent, percentage, user.getCurrencySymbol(), goalAmount,
+                    System.out.printf("%-15s: %s%10s (%5.1f%%) - Goal: %s%s %s(%5.1f%%)%s\n",
+                            category, user.getCurrencySymbol(), Money.format(spent), percentage, user.getCurrencySymbol(), Money.format(goalAmount),
                             progressColor, progressPercentage, RESET);
                 } else {
-                    System.out.printf("%-15s: %s%10.2f (%5.1f%%)\n",
-                            category, user.getCurrencySymbol(), spent, percentage);
+                    System.out.printf("%-15s: %s%10s (%5.1f%%)\n",
+                            category, user.getCurrencySymbol(), Money.format(spent), percentage);
                 }
 
-                if (aggregateByParent && parentToSubs.containsKey(category)) {
-                    Map<String, Double> subCategoryAmounts = new HashMap<>();
-
-                    for (Transaction transaction : filteredTransactions) {
-                        if (transaction.getType() == TransactionType.EXPENSE &&
-                            isSubcategory(transaction.getCategory()) &&
-                            getParentCategory(transaction.getCategory()).equals(category)) {
-                            String subCategory = transaction.getCategory();
-                            subCategoryAmounts.put(subCategory,
-                                subCategoryAmounts.getOrDefault(subCategory, 0.0) + transaction.getAmount());
-                        }
-                    }
-
-                    List<Map.Entry<String, Double>> sortedSubs = new ArrayList<>(subCategoryAmounts.entrySet());
-                    sortedSubs.sort((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()));
+                List<Integer> sortedSubs = new ArrayList<>();
+                for (int subId = 0; subId < uncategorized; subId++) {
+                    if (hasSubCategory[subId] && dictionary.root(subId) == categoryId) sortedSubs.add(subId);
+                }
+                sortedSubs.sort((s1, s2) -> Long.compare(subCategoryTotals[s2], subCategoryTotals[s1]));
 
-                    for (Map.Entry<String, Double> subEntry : sortedSubs) {
-                        String subCategory = subEntry.getKey();
-                        double subSpent = subEntry.getValue();
-                        double subPercentage = (subSpent / spent) * 100;
-                        String childName = getChildCategory(subCategory);
+                for (int subId : sortedSubs) {
+                    long subSpent = subCategoryTotals[subId];
+                    double subPercentage = Money.percent(subSpent, spent);
+                    String childName = dictionary.nameBelow(subId, categoryId);
 
-                        System.out.printf("  ↳ %-12s: %s%10.2f (%5.1f%% of parent)\n",
-                                childName, user.getCurrencySymbol(), subSpent, subPercentage);
-                    }
+                    System.out.printf("  ↳ %-12s: %s%10s (%5.1f%% of parent)\n",
+                            childName, user.getCurrencySymbol(), Money.format(subSpent), subPercentage);
                 }
             }
         }
@@ -2823,16 +2943,19 @@ public class Main {
         System.out.printf("%sBye Bye Money%s > %sCreate Backup%s%n%n", BLUE, RED, BLUE, RESET);
 
         try {
-            String fname = store.filename;
+            File userFile = store.userFile(user.getUsername());
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-            String backupName = fname + "_" + timestamp + ".bak";
-
-            Path source = Paths.get(fname);
-            Path target = Paths.get(backupName);
+            backups.adoptLegacyBackups(userFile);
 
-            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            try (BackupCatalog.BackupWriter writer = backups.create(userFile.getName(), timestamp)) {
+                try (OutputStream out = new BufferedOutputStream(writer)) {
+                    store.exportUser(user.getUsername(), out);
+                }
+                writer.commit();
 
-            System.out.printf("Backup created: %s%s%s%n", GREEN, backupName, RESET);
+                System.out.printf("Backup created: %s%s%s (%d chunks, %d new)%n", GREEN, formatTimestamp(timestamp), RESET,
+                        writer.chunkCount(), writer.newChunkCount());
+            }
         } catch (IOException ex) {
             ex.printStackTrace();
         }
@@ -2844,31 +2967,25 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sRestore from Backup%s%n%n", BLUE, RED, BLUE, RESET);
 
-        String fname = store.filename;
-        File dataDir = new File(fname).getParentFile();
-        String prefix = new File(fname).getName() + "_";
+        File userFile = store.userFile(user.getUsername());
 
         try {
-            List<Path> backups = Files.list(dataDir.toPath())
-                    .filter(path -> path.getFileName().toString().startsWith(prefix) &&
-                                   path.getFileName().toString().endsWith(".bak"))
-                    .sorted((p1, p2) -> p2.getFileName().toString().compareTo(p1.getFileName().toString()))
-                    .collect(Collectors.toList());
+            backups.adoptLegacyBackups(userFile);
+            List<BackupCatalog.Backup> available = backups.list(userFile.getName());
 
-            if (backups.isEmpty()) {
+            if (available.isEmpty()) {
                 System.out.println("No backups.");
                 pausePrompt();
                 return;
             }
 
             System.out.println("Available backups:");
-            for (int i = 0; i < backups.size(); i++) {
-                String filename = backups.get(i).getFileName().toString();
-                String timestamp = filename.substring(prefix.length(), filename.length() - 4);
-                System.out.printf("%s%d%s. %s (%s)%n", GREEN, i + 1, RESET, filename, formatTimestamp(timestamp));
+            for (int i = 0; i < available.size(); i++) {
+                BackupCatalog.Backup backup = available.get(i);
+                System.out.printf("%s%d%s. %s (%d bytes)%n", GREEN, i + 1, RESET, formatTimestamp(backup.timestamp()), backup.size());
             }
 
-            System.out.printf("%nPlease select a backup number (1-%d) or 'q' to cancel: ", backups.size());
+            System.out.printf("%nPlease select a backup number (1-%d) or 'q' to cancel: ", available.size());
             String choice = scanner.nextLine().toLowerCase();
 
             if ("q".equals(choice)) {
@@ -2878,13 +2995,13 @@ public class Main {
             }
 
             Integer selection = tryToParse(choice);
-            if (selection == null || selection < 1 || selection > backups.size()) {
+            if (selection == null || selection < 1 || selection > available.size()) {
                 System.out.println("\nInvalid selection. Restore cancelled.");
                 pausePrompt();
                 return;
             }
 
-            Path selectedBackup = backups.get(selection - 1);
+            BackupCatalog.Backup selectedBackup = available.get(selection - 1);
             System.out.printf("%n%sWARNING: current data will be replaced.%s%n", RED, RESET);
             System.out.print("Continue? (y/n): ");
             String confirm = scanner.nextLine().toLowerCase();
@@ -2895,13 +3012,13 @@ public class Main {
                 return;
             }
 
-            Path dataPath = Paths.get(fname);
-            Files.copy(selectedBackup, dataPath, StandardCopyOption.REPLACE_EXISTING);
+            try (InputStream in = new BufferedInputStream(backups.open(selectedBackup))) {
+                store.importUser(user.getUsername(), in);
+            }
 
             System.out.printf("%n%sBackup restored.%s%n", GREEN, RESET);
 
             user = store.getUser(user.getUsername());
-            categoriesSavedBefore = store.loadCategories(incCats, expCats);
 
             System.out.println("User data reloaded.");
         } catch (IOException ex) {
@@ -2952,7 +3069,7 @@ public class Main {
         }
 
         user.setPassword(newPassword);
-        store.updateUser(user);
+        save(() -> store.updateUser(user));
 
         System.out.printf("%sPassword changed.%s%n", GREEN, RESET);
         pausePrompt();
@@ -2995,7 +3112,7 @@ public class Main {
 
         if (!newSymbol.isEmpty()) {
             user.setCurrencySymbol(newSymbol);
-            store.updateUser(user);
+            save(() -> store.updateUser(user));
             System.out.printf("%sCurrency symbol updated.%s%n", GREEN, RESET);
         } else {
             System.out.printf("%sCurrency symbol cannot be empty. No changes made.%s%n", RED, RESET);
@@ -3056,10 +3173,10 @@ public class Main {
             return;
         }
 
-        double target;
+        long target;
         while (true) {
             System.out.print("Enter target (positive number): ");
-            Double amount = tryToParseDouble(scanner.nextLine());
+            Long amount = tryToParseAmount(scanner.nextLine());
             if (amount != null && amount > 0) {
                 target = amount;
                 break;
@@ -3069,11 +3186,12 @@ public class Main {
         }
 
         SavingsGoal goal = new SavingsGoal(name, target, 0);
-        user.savingsGoals.add(goal);
-        store.updateUser(user);
+        user.getSavingsGoals().add(goal);
+        user.markDirty(Section.SAVINGS_GOALS);
+        save(() -> store.updateUser(user));
 
-        System.out.printf("%sGoal '%s' added, target %s%.2f.%s%n",
-                GREEN, name, user.getCurrencySymbol(), target, RESET);
+        System.out.printf("%sGoal '%s' added, target %s%s.%s%n",
+                GREEN, name, user.getCurrencySymbol(), Money.format(target), RESET);
         pausePrompt();
     }
 
@@ -3081,7 +3199,7 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sSavings Goals%s > %sList Goals%s%n%n", BLUE, RED, BLUE, RESET, BLUE, RESET);
 
-        if (user.savingsGoals.isEmpty()) {
+        if (user.getSavingsGoals().isEmpty()) {
             System.out.println("No savings.");
             pausePrompt();
             return;
@@ -3091,16 +3209,16 @@ public class Main {
         System.out.println("#  | Name                | Progress                  | Percentage");
         System.out.println("---+---------------------+--------------------------+------------");
 
-        for (int i = 0; i < user.savingsGoals.size(); i++) {
-            SavingsGoal goal = user.savingsGoals.get(i);
+        for (int i = 0; i < user.getSavingsGoals().size(); i++) {
+            SavingsGoal goal = user.getSavingsGoals().get(i);
             double percentage = goal.getPercentComplete();
             String percentColor = percentage < 100 ? GREEN : BLUE;
 
-            System.out.printf("%s%2d%s | %-20s | %s%.2f%s/%s%.2f%s | %s%.1f%%%s%n",
+            System.out.printf("%s%2d%s | %-20s | %s%s%s/%s%s%s | %s%.1f%%%s%n",
                     GREEN, i + 1, RESET,
                     goal.getName(),
-                    GREEN, goal.getCurrentAmount(), RESET,
-                    BLUE, goal.getTargetAmount(), RESET,
+                    GREEN, Money.format(goal.getCurrentAmount()), RESET,
+                    BLUE, Money.format(goal.getTargetAmount()), RESET,
                     percentColor, percentage, RESET);
         }
 
@@ -3111,20 +3229,20 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sSavings Goals%s > %sUpdate Progress%s%n%n", BLUE, RED, BLUE, RESET, BLUE, RESET);
 
-        if (user.savingsGoals.isEmpty()) {
+        if (user.getSavingsGoals().isEmpty()) {
             System.out.println("No savings to update.");
             pausePrompt();
             return;
         }
 
         System.out.println("Select a goal to update:\n");
-        for (int i = 0; i < user.savingsGoals.size(); i++) {
-            SavingsGoal goal = user.savingsGoals.get(i);
-            System.out.printf("%s%d%s. %s - Progress: %s%.2f%s/%s%.2f%s (%.1f%%)%n",
+        for (int i = 0; i < user.getSavingsGoals().size(); i++) {
+            SavingsGoal goal = user.getSavingsGoals().get(i);
+            System.out.printf("%s%d%s. %s - Progress: %s%s%s/%s%s%s (%.1f%%)%n",
                     GREEN, i + 1, RESET,
                     goal.getName(),
-                    GREEN, goal.getCurrentAmount(), RESET,
-                    BLUE, goal.getTargetAmount(), RESET,
+                    GREEN, Money.format(goal.getCurrentAmount()), RESET,
+                    BLUE, Money.format(goal.getTargetAmount()), RESET,
                     goal.getPercentComplete());
         }
 
@@ -3132,18 +3250,18 @@ public class Main {
         String input = scanner.nextLine();
         Integer choice = tryToParse(input);
 
-        if (choice == null || choice < 1 || choice > user.savingsGoals.size()) {
+        if (choice == null || choice < 1 || choice > user.getSavingsGoals().size()) {
             System.out.println("Invalid choice.");
             pausePrompt();
             return;
         }
 
-        SavingsGoal selectedGoal = user.savingsGoals.get(choice - 1);
+        SavingsGoal selectedGoal = user.getSavingsGoals().get(choice - 1);
 
-        double amount;
+        long amount;
         while (true) {
             System.out.print("Enter amount to add to goal (positive number): ");
-            Double parsedAmount = tryToParseDouble(scanner.nextLine());
+            Long parsedAmount = tryToParseAmount(scanner.nextLine());
             if (parsedAmount != null && parsedAmount > 0) {
                 amount = parsedAmount;
                 break;
@@ -3152,18 +3270,19 @@ public class Main {
             }
         }
 
-        double newAmount = selectedGoal.getCurrentAmount() + amount;
+        long newAmount = selectedGoal.getCurrentAmount() + amount;
         selectedGoal.setCurrentAmount(newAmount);
-        store.updateUser(user);
+        user.markDirty(Section.SAVINGS_GOALS);
+        save(() -> store.updateUser(user));
 
         double percentage = selectedGoal.getPercentComplete();
         boolean completed = percentage >= 100;
 
-        System.out.printf("%sAdded %s%.2f to goal '%s'.%s%n",
-                GREEN, user.getCurrencySymbol(), amount, selectedGoal.getName(), RESET);
-        System.out.printf("New progress: %s%.2f%s/%s%.2f%s (%.1f%%)%n",
-                GREEN, selectedGoal.getCurrentAmount(), RESET,
-                BLUE, selectedGoal.getTargetAmount(), RESET,
+        System.out.printf("%sAdded %s%s to goal '%s'.%s%n",
+                GREEN, user.getCurrencySymbol(), Money.format(amount), selectedGoal.getName(), RESET);
+        System.out.printf("New progress: %s%s%s/%s%s%s (%.1f%%)%n",
+                GREEN, Money.format(selectedGoal.getCurrentAmount()), RESET,
+                BLUE, Money.format(selectedGoal.getTargetAmount()), RESET,
                 percentage);
 
         if (completed) {
@@ -3178,20 +3297,20 @@ public class Main {
         cleanScreen();
         System.out.printf("%sBye Bye Money%s > %sSavings Goals%s > %sDelete Goal%s%n%n", BLUE, RED, BLUE, RESET, BLUE, RESET);
 
-        if (user.savingsGoals.isEmpty()) {
+        if (user.getSavingsGoals().isEmpty()) {
             System.out.println("No savings to delete.");
             pausePrompt();
             return;
         }
 
         System.out.println("Select to delete:\n");
-        for (int i = 0; i < user.savingsGoals.size(); i++) {
-            SavingsGoal goal = user.savingsGoals.get(i);
-            System.out.printf("%s%d%s. %s - Progress: %s%.2f%s/%s%.2f%s (%.1f%%)%n",
+        for (int i = 0; i < user.getSavingsGoals().size(); i++) {
+            SavingsGoal goal = user.getSavingsGoals().get(i);
+            System.out.printf("%s%d%s. %s - Progress: %s%s%s/%s%s%s (%.1f%%)%n",
                     GREEN, i + 1, RESET,
                     goal.getName(),
-                    GREEN, goal.getCurrentAmount(), RESET,
-                    BLUE, goal.getTargetAmount(), RESET,
+                    GREEN, Money.format(goal.getCurrentAmount()), RESET,
+                    BLUE, Money.format(goal.getTargetAmount()), RESET,
                     goal.getPercentComplete());
         }
 
@@ -3199,20 +3318,21 @@ public class Main {
         String input = scanner.nextLine();
         Integer choice = tryToParse(input);
 
-        if (choice == null || choice < 1 || choice > user.savingsGoals.size()) {
+        if (choice == null || choice < 1 || choice > user.getSavingsGoals().size()) {
             System.out.println("Invalid choice.");
             pausePrompt();
             return;
         }
 
-        SavingsGoal selectedGoal = user.savingsGoals.get(choice - 1);
+        SavingsGoal selectedGoal = user.getSavingsGoals().get(choice - 1);
 
         System.out.printf("\nAre you sure to delete the goal '%s'? (y/n): ", selectedGoal.getName());
         String confirm = scanner.nextLine().toLowerCase();
 
         if ("y".equals(confirm)) {
-            user.savingsGoals.remove(choice - 1);
-            store.updateUser(user);
+            user.getSavingsGoals().remove(choice - 1);
+            user.markDirty(Section.SAVINGS_GOALS);
+            save(() -> store.updateUser(user));
             System.out.printf("%sGoal '%s' deleted.%s%n", GREEN, selectedGoal.getName(), RESET);
         } else {
             System.out.println("Deletion cancelled.");
@@ -0,0 +1,22 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Amounts are held as a long count of cents; decimal text only appears when parsing input and stored files, and on display.
+final class Money {
+    private Money() {
+    }
+
+    static long parse(String text) {
+        return new BigDecimal(text.trim()).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    static String format(long cents) {
+        long units = Math.abs(cents / 100);
+        int fraction = (int) Math.abs(cents % 100);
+        return (cents < 0 ? "-" : "") + units + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    static double percent(long part, long whole) {
+        return whole != 0 ? (double) part / whole * 100 : 0;
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+interface Storage {
+    User getUser(String username);
+
+    void addUser(User user);
+
+    void updateUser(User user);
+
+    void saveCategories(List<String> incomeCats, List<String> expenseCats);
+
+    boolean loadCategories(List<String> incomeCats, List<String> expenseCats);
+
+    File userFile(String username);
+
+    void exportUser(String username, OutputStream out) throws IOException;
+
+    void importUser(String username, InputStream in) throws IOException;
+
+    default boolean userExists(String username) {
+        return userFile(username).exists();
+    }
+
+    default boolean checkCredentials(String username, String password) {
+        User user = getUser(username);
+        return user != null && user.getPassword().equals(password);
+    }
+
+    default void addTransaction(User user, Transaction transaction) {
+        user.markDirty(Section.TRANSACTIONS);
+        updateUser(user);
+    }
+
+    default void editTransaction(User user, Transaction transaction) {
+        user.markDirty(Section.TRANSACTIONS);
+        updateUser(user);
+    }
+
+    default void deleteTransaction(User user, long id) {
+        user.markDirty(Section.TRANSACTIONS);
+        updateUser(user);
+    }
+
+    default void setGoal(User user, BudgetGoal goal) {
+        user.markDirty(Section.GOALS);
+        updateUser(user);
+    }
+
+    default void deleteGoal(User user, String category) {
+        user.markDirty(Section.GOALS);
+        updateUser(user);
+    }
+
+    default void advanceRecurring(User user, int index) {
+        user.markDirty(Section.RECURRING);
+        updateUser(user);
+    }
+
+
+    default void close() {
+    }
+
+    static Storage open() {
+        String engine = System.getProperty("byebyemoney.storage", "xml");
+        Storage storage = "binary".equalsIgnoreCase(engine) ? new BinaryDataStore() : new DataStore();
+
+        if (Boolean.getBoolean("byebyemoney.writeBehind")) {
+            storage = new WriteBehindStorage(storage, Long.getLong("byebyemoney.writeBehind.delayMillis", 250));
+        }
+        return storage;
+    }
+
+    static String fileNameFor(String username) {
+        String name = URLEncoder.encode(username, StandardCharsets.UTF_8).replace("*", "%2A");
+        return name.startsWith(".") ? "%2E" + name.substring(1) : name;
+    }
+}
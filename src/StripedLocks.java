@@ -0,0 +1,119 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+final class StripedLocks {
+    interface Hold extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final File file;
+    private final ReentrantReadWriteLock[] locks;
+    private final int[] readers;
+    private final FileLock[] sharedLocks;
+    private FileChannel channel;
+
+    // Each stripe guards a one-byte region of the lock file, so other processes see the same stripes as this one.
+    StripedLocks(File file, int stripes) {
+        this.file = file;
+        this.locks = new ReentrantReadWriteLock[stripes];
+        this.readers = new int[stripes];
+        this.sharedLocks = new FileLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    Hold read(String key) throws IOException {
+        int stripe = stripeOf(key);
+        ReentrantReadWriteLock lock = locks[stripe];
+        lock.readLock().lock();
+
+        if (lock.isWriteLockedByCurrentThread()) {
+            return lock.readLock()::unlock;
+        }
+
+        try {
+            acquireShared(stripe);
+        } catch (IOException | RuntimeException ex) {
+            lock.readLock().unlock();
+            throw ex;
+        }
+        return () -> {
+            releaseShared(stripe);
+            lock.readLock().unlock();
+        };
+    }
+
+    Hold write(String key) throws IOException {
+        int stripe = stripeOf(key);
+        ReentrantReadWriteLock lock = locks[stripe];
+        lock.writeLock().lock();
+
+        if (lock.getWriteHoldCount() > 1) {
+            return lock.writeLock()::unlock;
+        }
+
+        FileLock fileLock;
+        try {
+            fileLock = channel().lock(stripe, 1, false);
+        } catch (IOException | RuntimeException ex) {
+            lock.writeLock().unlock();
+            throw ex;
+        }
+        return () -> {
+            release(fileLock);
+            lock.writeLock().unlock();
+        };
+    }
+
+    synchronized void close() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void acquireShared(int stripe) throws IOException {
+        synchronized (locks[stripe]) {
+            if (readers[stripe] == 0) {
+                sharedLocks[stripe] = channel().lock(stripe, 1, true);
+            }
+            readers[stripe]++;
+        }
+    }
+
+    private void releaseShared(int stripe) {
+        synchronized (locks[stripe]) {
+            if (--readers[stripe] == 0) {
+                release(sharedLocks[stripe]);
+                sharedLocks[stripe] = null;
+            }
+        }
+    }
+
+    private int stripeOf(String key) {
+        return Math.floorMod(key.hashCode(), locks.length);
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            file.getParentFile().mkdirs();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    private static void release(FileLock fileLock) {
+        try {
+            if (fileLock.isValid()) fileLock.release();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+}
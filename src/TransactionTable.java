@@ -0,0 +1,519 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+final class TransactionTable extends AbstractList<Transaction> implements RandomAccess {
+    private static final boolean OFF_HEAP = Boolean.getBoolean("byebyemoney.offHeap");
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Each chunk holds its rows column by column: every field of the chunk's rows sits in one contiguous region.
+    private static final int DATES = 0;
+    private static final int CATEGORIES = DATES + CHUNK_SIZE * Integer.BYTES;
+    private static final int DESCRIPTION_OFFSETS = CATEGORIES + CHUNK_SIZE * Integer.BYTES;
+    private static final int DESCRIPTION_LENGTHS = DESCRIPTION_OFFSETS + CHUNK_SIZE * Integer.BYTES;
+    private static final int AMOUNTS = DESCRIPTION_LENGTHS + CHUNK_SIZE * Integer.BYTES;
+    private static final int IDS = AMOUNTS + CHUNK_SIZE * Long.BYTES;
+    private static final int FLAGS = IDS + CHUNK_SIZE * Long.BYTES;
+    private static final int CHUNK_BYTES = FLAGS + CHUNK_SIZE;
+
+    private static final byte EXPENSE = 1;
+    private static final byte DELETED = 2;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private boolean[] owned = new boolean[0];
+
+    private CharBuffer text = allocateText(1024);
+    private int textLength;
+    private boolean textShared;
+    private int garbage;
+
+    // Every row has a unique id; the index finds its slot, and handles use the generation to notice when slots have moved.
+    private LongIntMap index = new LongIntMap(OFF_HEAP);
+    private long nextId = 1;
+    private int generation;
+    private DateIndex byDate = new DateIndex(OFF_HEAP);
+
+    // Deleted rows stay in their slots as tombstones until rows are next addressed by position.
+    private int slots;
+    private int tombstones;
+
+    @Override
+    public int size() {
+        compact();
+        return slots;
+    }
+
+    @Override
+    public Transaction get(int row) {
+        Objects.checkIndex(row, size());
+        return new Transaction(this, id(row), row, generation);
+    }
+
+    @Override
+    public Transaction set(int row, Transaction transaction) {
+        Objects.checkIndex(row, size());
+        Transaction previous = detach(row);
+        String description = transaction.getDescription();
+        setDate(row, transaction.getDate());
+        writeRow(row, id(row), transaction.getDate(), transaction.getAmount(), transaction.getType(), transaction.getCategoryId());
+        setDescription(row, description);
+        return previous;
+    }
+
+    @Override
+    public void add(int row, Transaction transaction) {
+        insert(row, transaction, false);
+        modCount++;
+    }
+
+    private void insert(int row, Transaction transaction, boolean bulk) {
+        Objects.checkIndex(row, size() + 1);
+        long id = claimId(transaction.getId());
+        int date = transaction.getDate();
+        long amount = transaction.getAmount();
+        TransactionType type = transaction.getType();
+        int category = transaction.getCategoryId();
+        String description = transaction.getDescription();
+
+        ensureCapacity(slots + 1);
+        for (int i = slots; i > row; i--) {
+            moveRow(i - 1, i);
+        }
+        if (row < slots) generation++;
+        slots++;
+        writeRow(row, id, date, amount, type, category);
+        writeDescription(row, description);
+        if (bulk) byDate().append(date, id);
+        else byDate().insert(date, id);
+        transaction.assignId(id);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Transaction> transactions) {
+        if (!(transactions instanceof TransactionTable table)) {
+            ensureCapacity(size() + transactions.size());
+            for (Transaction transaction : transactions) {
+                insert(slots, transaction, true);
+            }
+            modCount++;
+            return !transactions.isEmpty();
+        }
+
+        int count = table.size();
+        ensureCapacity(slots + count);
+        for (int row = 0; row < count; row++) {
+            addRow(table, row);
+        }
+        modCount++;
+        return count > 0;
+    }
+
+    void append(long id, int date, String description, long amount, TransactionType type, String category) {
+        ensureCapacity(slots + 1);
+        id = claimId(id);
+        int row = slots++;
+        writeRow(row, id, date, amount, type, CategoryDictionary.of(type).intern(category));
+        writeDescription(row, description);
+        byDate().append(date, id);
+        modCount++;
+    }
+
+    @Override
+    public Transaction remove(int row) {
+        Objects.checkIndex(row, size());
+        Transaction removed = detach(row);
+        delete(id(row));
+        return removed;
+    }
+
+    boolean delete(long id) {
+        int row = index().get(id);
+        if (row < 0) return false;
+
+        ByteBuffer chunk = writable(row);
+        chunk.put(FLAGS + (row & CHUNK_MASK), (byte) (chunk.get(FLAGS + (row & CHUNK_MASK)) | DELETED));
+        index().remove(id);
+        byDate().remove(date(row), id);
+        garbage += Math.max(descriptionLength(row), 0);
+        tombstones++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        slots = 0;
+        tombstones = 0;
+        text = allocateText(1024);
+        textLength = 0;
+        textShared = false;
+        garbage = 0;
+        index = new LongIntMap(OFF_HEAP);
+        byDate = new DateIndex(OFF_HEAP);
+        generation++;
+        modCount++;
+    }
+
+    @Override
+    public int indexOf(Object other) {
+        if (!(other instanceof Transaction transaction) || !transaction.belongsTo(this)) return -1;
+        compact();
+        return index().get(transaction.getId());
+    }
+
+    @Override
+    public int lastIndexOf(Object other) {
+        return indexOf(other);
+    }
+
+    @Override
+    public void sort(Comparator<? super Transaction> comparator) {
+        Transaction[] rows = new Transaction[size()];
+        for (int row = 0; row < slots; row++) {
+            rows[row] = new Transaction(this, id(row), row, generation);
+        }
+        Arrays.sort(rows, comparator);
+
+        TransactionTable sorted = new TransactionTable();
+        sorted.ensureCapacity(slots);
+        for (Transaction transaction : rows) {
+            sorted.addRow(this, index().get(transaction.getId()));
+        }
+        adopt(sorted);
+        modCount++;
+    }
+
+    void ensureCapacity(int capacity) {
+        int count = (capacity + CHUNK_MASK) >>> CHUNK_BITS;
+        if (count <= chunks.length) return;
+
+        int oldCount = chunks.length;
+        chunks = Arrays.copyOf(chunks, count);
+        owned = Arrays.copyOf(owned, count);
+        for (int chunk = oldCount; chunk < count; chunk++) {
+            chunks[chunk] = allocateChunk();
+            owned[chunk] = true;
+        }
+    }
+
+    // Only the thread that owns this table may release its chunks; it copies a chunk again before its next write to it.
+    void share() {
+        compact();
+        Arrays.fill(owned, false);
+    }
+
+    // Chunks the source has released are read in place and the rest are copied, so the source is never written; text is copied before this table writes any.
+    void shareFrom(TransactionTable source) {
+        chunks = source.chunks.clone();
+        owned = new boolean[chunks.length];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            if (!source.owned[chunk]) continue;
+            chunks[chunk] = allocateChunk().put(0, source.chunks[chunk], 0, CHUNK_BYTES);
+            owned[chunk] = true;
+        }
+        text = source.text.duplicate();
+        textLength = source.textLength;
+        textShared = true;
+        garbage = source.garbage;
+        index = null;
+        byDate = null;
+        nextId = source.nextId;
+        slots = source.slots;
+        tombstones = source.tombstones;
+        generation++;
+        modCount++;
+    }
+
+    Transaction byId(long id) {
+        int row = index().get(id);
+        return row >= 0 ? new Transaction(this, id, row, generation) : null;
+    }
+
+    int slotOf(long id) {
+        return index().get(id);
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    TransactionTable between(int startDate, int endDate) {
+        int[] rows = rowsBetween(startDate, endDate);
+        TransactionTable range = new TransactionTable();
+        range.ensureCapacity(rows.length);
+        for (int row : rows) {
+            range.addRow(this, row);
+        }
+        return range;
+    }
+
+    int[] rowsBetween(int startDate, int endDate) {
+        compact();
+        int from = byDate().from(startDate);
+        int to = Math.max(from, byDate().after(endDate));
+        int[] rows = new int[to - from];
+        for (int i = from; i < to; i++) {
+            rows[i - from] = index().get(byDate().id(i));
+        }
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    List<Transaction> inDateOrder() {
+        compact();
+        Transaction[] rows = new Transaction[slots];
+        for (int i = byDate().from(Integer.MIN_VALUE); i < slots; i++) {
+            long id = byDate().id(i);
+            rows[i] = new Transaction(this, id, index().get(id), generation);
+        }
+        return Arrays.asList(rows);
+    }
+
+    long total(TransactionType type) {
+        boolean expense = type == TransactionType.EXPENSE;
+        long total = 0;
+        for (int row = 0; row < size(); row++) {
+            if (isExpense(row) == expense) total += amount(row);
+        }
+        return total;
+    }
+
+    long id(int row) {
+        return chunks[row >>> CHUNK_BITS].getLong(IDS + (row & CHUNK_MASK) * Long.BYTES);
+    }
+
+    int date(int row) {
+        return chunks[row >>> CHUNK_BITS].getInt(DATES + (row & CHUNK_MASK) * Integer.BYTES);
+    }
+
+    long amount(int row) {
+        return chunks[row >>> CHUNK_BITS].getLong(AMOUNTS + (row & CHUNK_MASK) * Long.BYTES);
+    }
+
+    int category(int row) {
+        return chunks[row >>> CHUNK_BITS].getInt(CATEGORIES + (row & CHUNK_MASK) * Integer.BYTES);
+    }
+
+    TransactionType type(int row) {
+        return isExpense(row) ? TransactionType.EXPENSE : TransactionType.INCOME;
+    }
+
+    boolean isExpense(int row) {
+        return (chunks[row >>> CHUNK_BITS].get(FLAGS + (row & CHUNK_MASK)) & EXPENSE) != 0;
+    }
+
+    String description(int row) {
+        int length = descriptionLength(row);
+        if (length < 0) return null;
+
+        int offset = descriptionOffset(row);
+        return text.subSequence(offset, offset + length).toString();
+    }
+
+    void setDate(int row, int date) {
+        int oldDate = date(row);
+        if (oldDate == date) return;
+
+        long id = id(row);
+        byDate().remove(oldDate, id);
+        byDate().insert(date, id);
+        writable(row).putInt(DATES + (row & CHUNK_MASK) * Integer.BYTES, date);
+    }
+
+    void setAmount(int row, long amount) {
+        writable(row).putLong(AMOUNTS + (row & CHUNK_MASK) * Long.BYTES, amount);
+    }
+
+    void setCategory(int row, int category) {
+        writable(row).putInt(CATEGORIES + (row & CHUNK_MASK) * Integer.BYTES, category);
+    }
+
+    void setDescription(int row, String description) {
+        garbage += Math.max(descriptionLength(row), 0);
+        writeDescription(row, description);
+        compactIfWasteful();
+    }
+
+    private Transaction detach(int row) {
+        TransactionType type = type(row);
+        return new Transaction(date(row), description(row), amount(row), type, CategoryDictionary.of(type).name(category(row)));
+    }
+
+    private long claimId(long id) {
+        LongIntMap ids = index();
+        if (id <= 0 || ids.get(id) >= 0) id = nextId;
+        nextId = Math.max(nextId, id + 1);
+        return id;
+    }
+
+    boolean isDeleted(int row) {
+        return (chunks[row >>> CHUNK_BITS].get(FLAGS + (row & CHUNK_MASK)) & DELETED) != 0;
+    }
+
+    private void compact() {
+        if (tombstones == 0) return;
+
+        if (index == null) rebuildIndexes();
+        int live = 0;
+        for (int row = 0; row < slots; row++) {
+            if (isDeleted(row)) continue;
+            if (row != live) moveRow(row, live);
+            live++;
+        }
+        slots = live;
+        tombstones = 0;
+        generation++;
+        compactIfWasteful();
+    }
+
+    private void addRow(TransactionTable from, int fromRow) {
+        long id = claimId(from.id(fromRow));
+        int row = slots++;
+        writeRow(row, id, from.date(fromRow), from.amount(fromRow), from.type(fromRow), from.category(fromRow));
+        byDate().append(from.date(fromRow), id);
+        int length = from.descriptionLength(fromRow);
+        if (length < 0) {
+            setDescriptionSlot(row, 0, -1);
+            return;
+        }
+
+        int offset = from.descriptionOffset(fromRow);
+        reserveText(length);
+        CharBuffer description = from.text.subSequence(offset, offset + length);
+        text.position(textLength);
+        text.put(description);
+        text.position(0);
+        setDescriptionSlot(row, textLength, length);
+        textLength += length;
+    }
+
+    private void writeRow(int row, long id, int date, long amount, TransactionType type, int category) {
+        ByteBuffer chunk = writable(row);
+        chunk.putLong(IDS + (row & CHUNK_MASK) * Long.BYTES, id);
+        chunk.put(FLAGS + (row & CHUNK_MASK), type == TransactionType.EXPENSE ? EXPENSE : 0);
+        chunk.putInt(DATES + (row & CHUNK_MASK) * Integer.BYTES, date);
+        setAmount(row, amount);
+        setCategory(row, category);
+        index().put(id, row);
+    }
+
+    private void moveRow(int from, int to) {
+        writeRow(to, id(from), date(from), amount(from), type(from), category(from));
+        setDescriptionSlot(to, descriptionOffset(from), descriptionLength(from));
+    }
+
+    private int descriptionOffset(int row) {
+        return chunks[row >>> CHUNK_BITS].getInt(DESCRIPTION_OFFSETS + (row & CHUNK_MASK) * Integer.BYTES);
+    }
+
+    private int descriptionLength(int row) {
+        return chunks[row >>> CHUNK_BITS].getInt(DESCRIPTION_LENGTHS + (row & CHUNK_MASK) * Integer.BYTES);
+    }
+
+    private void setDescriptionSlot(int row, int offset, int length) {
+        ByteBuffer chunk = writable(row);
+        chunk.putInt(DESCRIPTION_OFFSETS + (row & CHUNK_MASK) * Integer.BYTES, offset);
+        chunk.putInt(DESCRIPTION_LENGTHS + (row & CHUNK_MASK) * Integer.BYTES, length);
+    }
+
+    private void writeDescription(int row, String description) {
+        if (description == null) {
+            setDescriptionSlot(row, 0, -1);
+            return;
+        }
+
+        reserveText(description.length());
+        text.position(textLength);
+        text.put(description);
+        text.position(0);
+        setDescriptionSlot(row, textLength, description.length());
+        textLength += description.length();
+    }
+
+    private void reserveText(int length) {
+        if (textLength + length <= text.capacity() && !textShared) return;
+
+        int capacity = textLength + length <= text.capacity() ? text.capacity() : Math.max(text.capacity() * 2, textLength + length);
+        CharBuffer larger = allocateText(capacity);
+        larger.put(text.limit(textLength));
+        larger.position(0);
+        text.limit(text.capacity());
+        text = larger;
+        textShared = false;
+    }
+
+    private void compactIfWasteful() {
+        if (tombstones > 0 || garbage < 4096 || garbage < textLength / 2) return;
+
+        TransactionTable compacted = new TransactionTable();
+        compacted.ensureCapacity(slots);
+        for (int row = 0; row < slots; row++) {
+            compacted.addRow(this, row);
+        }
+        adopt(compacted);
+    }
+
+    private void adopt(TransactionTable other) {
+        chunks = other.chunks;
+        owned = other.owned;
+        text = other.text;
+        textLength = other.textLength;
+        textShared = false;
+        garbage = 0;
+        index = other.index;
+        byDate = other.byDate;
+        slots = other.slots;
+        tombstones = 0;
+        nextId = Math.max(nextId, other.nextId);
+        generation++;
+    }
+
+    private ByteBuffer writable(int row) {
+        int chunk = row >>> CHUNK_BITS;
+        if (!owned[chunk]) {
+            ByteBuffer copy = allocateChunk();
+            copy.put(0, chunks[chunk], 0, CHUNK_BYTES);
+            chunks[chunk] = copy;
+            owned[chunk] = true;
+        }
+        return chunks[chunk];
+    }
+
+    private LongIntMap index() {
+        if (index == null) rebuildIndexes();
+        return index;
+    }
+
+    private DateIndex byDate() {
+        if (byDate == null) rebuildIndexes();
+        return byDate;
+    }
+
+    private void rebuildIndexes() {
+        index = new LongIntMap(OFF_HEAP);
+        byDate = new DateIndex(OFF_HEAP);
+        for (int row = 0; row < slots; row++) {
+            if (isDeleted(row)) continue;
+            index.put(id(row), row);
+            byDate.append(date(row), id(row));
+        }
+    }
+
+    private static ByteBuffer allocateChunk() {
+        return (OFF_HEAP ? ByteBuffer.allocateDirect(CHUNK_BYTES) : ByteBuffer.allocate(CHUNK_BYTES)).order(ByteOrder.nativeOrder());
+    }
+
+    private static CharBuffer allocateText(int capacity) {
+        return OFF_HEAP ? ByteBuffer.allocateDirect(capacity * Character.BYTES).order(ByteOrder.nativeOrder()).asCharBuffer() : CharBuffer.allocate(capacity);
+    }
+}
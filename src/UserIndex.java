@@ -0,0 +1,90 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+class UserIndex {
+    record Entry(String username, String file, String password) {
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private int lineCount;
+    private long loadedModified = -1;
+    private long loadedSize = -1;
+
+    UserIndex(File file) {
+        this.file = file;
+    }
+
+    synchronized boolean exists() {
+        return file.exists();
+    }
+
+    synchronized Entry get(String username) throws IOException {
+        refresh();
+        return entries.get(username);
+    }
+
+    synchronized void put(Entry entry) throws IOException {
+        refresh();
+        if (entry.equals(entries.get(entry.username()))) return;
+
+        entries.put(entry.username(), entry);
+        String line = TabSeparated.format(entry.username(), entry.file(), entry.password()) + "\n";
+        Files.write(file.toPath(), line.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        lineCount++;
+
+        if (lineCount > 2 * entries.size() + 16) {
+            rewrite(entries);
+        } else {
+            markLoaded();
+        }
+    }
+
+    synchronized void rewrite(Map<String, Entry> newEntries) throws IOException {
+        AtomicFiles.write(file, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            for (Entry entry : newEntries.values()) {
+                writer.write(TabSeparated.format(entry.username(), entry.file(), entry.password()));
+                writer.write('\n');
+            }
+            writer.flush();
+        });
+
+        if (newEntries != entries) {
+            entries.clear();
+            entries.putAll(newEntries);
+        }
+        lineCount = entries.size();
+        markLoaded();
+    }
+
+    private void refresh() throws IOException {
+        if (file.lastModified() == loadedModified && file.length() == loadedSize) return;
+
+        entries.clear();
+        lineCount = 0;
+        if (file.exists()) {
+            String[] lines = Files.readString(file.toPath(), StandardCharsets.UTF_8).split("\n", -1);
+            for (int i = 0; i < lines.length - 1; i++) {
+                String[] fields = TabSeparated.parse(lines[i]);
+                if (fields.length < 3) continue;
+                entries.put(fields[0], new Entry(fields[0], fields[1], fields[2]));
+                lineCount++;
+            }
+        }
+        markLoaded();
+    }
+
+    private void markLoaded() {
+        loadedModified = file.lastModified();
+        loadedSize = file.length();
+    }
+}
@@ -0,0 +1,26 @@
+class VersionConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String username;
+    private final long expectedVersion;
+    private final long storedVersion;
+
+    VersionConflictException(String username, long expectedVersion, long storedVersion) {
+        super("User " + username + " is at version " + storedVersion + ", expected " + expectedVersion);
+        this.username = username;
+        this.expectedVersion = expectedVersion;
+        this.storedVersion = storedVersion;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    long getStoredVersion() {
+        return storedVersion;
+    }
+}
@@ -0,0 +1,281 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+class WriteBehindStorage implements Storage {
+    private final Storage delegate;
+    private final long delayMillis;
+    private final Map<String, User> pending = new LinkedHashMap<>();
+    private final Map<User, User> sessions = new IdentityHashMap<>();
+    private final Map<User, long[]> written = new WeakHashMap<>();
+    private final Map<User, VersionConflictException> conflicts = new WeakHashMap<>();
+    private final Map<User, Set<Section>> failures = new WeakHashMap<>();
+    private final Object closeLock = new Object();
+    private final Thread writer;
+    private boolean writing;
+    private boolean closed;
+
+    WriteBehindStorage(Storage delegate, long delayMillis) {
+        this.delegate = delegate;
+        this.delayMillis = delayMillis;
+        this.writer = new Thread(this::writeLoop, "write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    @Override
+    public void updateUser(User user) {
+        synchronized (this) {
+            VersionConflictException conflict = conflicts.remove(user);
+            if (conflict != null) throw conflict;
+
+            Set<Section> failed = failures.remove(user);
+            if (failed != null) {
+                user.markDirty(failed);
+                throw new WriteFailedException(user.getUsername(), failed);
+            }
+        }
+
+        user.share();
+        User snapshot = user.copy();
+        user.markClean(snapshot.dirtySections());
+        synchronized (this) {
+            if (closed) {
+                write(snapshot, user);
+                return;
+            }
+            sessions.put(snapshot, user);
+            User previous = pending.put(user.getUsername(), snapshot);
+            if (previous != null) {
+                snapshot.markDirty(previous.dirtySections());
+                sessions.remove(previous);
+            }
+            notifyAll();
+        }
+    }
+
+    @Override
+    public User getUser(String username) {
+        flush();
+        User user;
+        synchronized (delegate) {
+            user = delegate.getUser(username);
+        }
+
+        if (user != null && user.getLoader() != null && !(user.getLoader() instanceof LockedLoader)) {
+            user.setLoader(new LockedLoader(user.getLoader()));
+        }
+        return user;
+    }
+
+    @Override
+    public boolean userExists(String username) {
+        synchronized (this) {
+            if (pending.containsKey(username)) return true;
+        }
+        synchronized (delegate) {
+            return delegate.userExists(username);
+        }
+    }
+
+    @Override
+    public boolean checkCredentials(String username, String password) {
+        synchronized (this) {
+            User queued = pending.get(username);
+            if (queued != null) return queued.getPassword().equals(password);
+        }
+        synchronized (delegate) {
+            return delegate.checkCredentials(username, password);
+        }
+    }
+
+    @Override
+    public void addUser(User user) {
+        synchronized (delegate) {
+            delegate.addUser(user);
+        }
+    }
+
+    @Override
+    public void saveCategories(List<String> incomeCats, List<String> expenseCats) {
+        synchronized (delegate) {
+            delegate.saveCategories(incomeCats, expenseCats);
+        }
+    }
+
+    @Override
+    public boolean loadCategories(List<String> incomeCats, List<String> expenseCats) {
+        synchronized (delegate) {
+            return delegate.loadCategories(incomeCats, expenseCats);
+        }
+    }
+
+    @Override
+    public File userFile(String username) {
+        return delegate.userFile(username);
+    }
+
+    @Override
+    public void exportUser(String username, OutputStream out) throws IOException {
+        flush();
+        synchronized (delegate) {
+            delegate.exportUser(username, out);
+        }
+    }
+
+    @Override
+    public void importUser(String username, InputStream in) throws IOException {
+        synchronized (this) {
+            pending.remove(username);
+        }
+        flush();
+        synchronized (delegate) {
+            delegate.importUser(username, in);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (closeLock) {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                notifyAll();
+            }
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            delegate.close();
+        }
+    }
+
+    private class LockedLoader implements SectionLoader {
+        private final SectionLoader loader;
+
+        LockedLoader(SectionLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public void load(User user, Section section) {
+            synchronized (delegate) {
+                loader.load(user, section);
+            }
+        }
+
+        @Override
+        public TransactionTable loadTransactions(User user, int startDate, int endDate) {
+            synchronized (delegate) {
+                return loader.loadTransactions(user, startDate, endDate);
+            }
+        }
+
+        @Override
+        public int countTransactions(User user) {
+            synchronized (delegate) {
+                return loader.countTransactions(user);
+            }
+        }
+    }
+
+    private void write(User snapshot, User session) {
+        long loadedVersion = snapshot.version;
+        synchronized (this) {
+            long[] last = written.get(session);
+            if (last != null && last[0] == loadedVersion) {
+                snapshot.version = last[1];
+            }
+        }
+
+        try {
+            synchronized (delegate) {
+                delegate.updateUser(snapshot);
+            }
+        } catch (VersionConflictException ex) {
+            throw ex;
+        } catch (RuntimeException ex) {
+            failed(session, snapshot.dirtySections());
+            throw ex;
+        }
+
+        synchronized (this) {
+            written.put(session, new long[] {loadedVersion, snapshot.version});
+        }
+        failed(session, snapshot.dirtySections());
+    }
+
+    // The session's sections were marked clean when its copy was queued, so whatever the write left dirty goes back to it.
+    private synchronized void failed(User session, Set<Section> unsaved) {
+        if (unsaved.isEmpty()) return;
+        failures.computeIfAbsent(session, key -> EnumSet.noneOf(Section.class)).addAll(unsaved);
+    }
+
+    synchronized void flush() {
+        while (!pending.isEmpty() || writing) {
+            notifyAll();
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            User next;
+            User session;
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        wait();
+                    }
+                    if (!closed && delayMillis > 0) {
+                        wait(delayMillis);
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                }
+
+                if (pending.isEmpty()) {
+                    if (closed) return;
+                    continue;
+                }
+
+                Iterator<User> iterator = pending.values().iterator();
+                next = iterator.next();
+                iterator.remove();
+                session = sessions.remove(next);
+                writing = true;
+            }
+
+            try {
+                write(next, session);
+            } catch (VersionConflictException ex) {
+                synchronized (this) {
+                    conflicts.put(session, ex);
+                }
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            } finally {
+                synchronized (this) {
+                    writing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+class WriteFailedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String username;
+    private final EnumSet<Section> sections;
+
+    WriteFailedException(String username, Set<Section> sections) {
+        super("Saving " + sections + " for user " + username + " failed");
+        this.username = username;
+        this.sections = EnumSet.copyOf(sections);
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    Set<Section> getSections() {
+        return sections;
+    }
+}